@@ -0,0 +1,94 @@
+package com.sitepoint.optional.example;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * `Balance` is immutable, so the balance of an account can be updated concurrently by atomically swapping the
+ * reference (compare-and-set) rather than by locking: `deposit` and `withdraw` never block, and whoever reads the
+ * balance (e.g. through `extractBalance`) always gets a complete snapshot.
+ * Amounts are added and subtracted as minor units (see `CompactBalance`), so that updates never accumulate
+ * rounding errors.
+ */
+class Account {
+    private static final AtomicReferenceFieldUpdater<Account, Balance> BALANCE =
+            AtomicReferenceFieldUpdater.newUpdater(Account.class, Balance.class, "balance");
+
+    private Long id;
+    volatile Balance balance;
+
+    public Account(Long id, Balance balance) {
+        this.id = id;
+        this.balance = balance;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Balance getBalance() {
+        return balance;
+    }
+
+    public boolean compareAndSetBalance(Balance expected, Balance update) {
+        return BALANCE.compareAndSet(this, expected, update);
+    }
+
+    /**
+     * Atomically adds `amount` to the balance.
+     *
+     * @return The updated balance.
+     * @throws IllegalArgumentException If `amount` is negative.
+     * @throws IllegalStateException If the balance, or its amount, is `null`.
+     */
+    public Balance deposit(double amount) {
+        long minorUnits = checkedMinorUnits(amount);
+        Balance current;
+        Balance updated;
+        do {
+            current = checkedBalance();
+            updated = withMinorUnits(current, Math.addExact(CompactBalance.toMinorUnits(current.getAmount()), minorUnits));
+        } while (!compareAndSetBalance(current, updated));
+        return updated;
+    }
+
+    /**
+     * Atomically subtracts `amount` from the balance, unless the balance is lower than `amount`.
+     *
+     * @return `true` if the amount was withdrawn, `false` if funds were insufficient.
+     * @throws IllegalArgumentException If `amount` is negative.
+     * @throws IllegalStateException If the balance, or its amount, is `null`.
+     */
+    public boolean withdraw(double amount) {
+        long minorUnits = checkedMinorUnits(amount);
+        Balance current;
+        Balance updated;
+        do {
+            current = checkedBalance();
+            long available = CompactBalance.toMinorUnits(current.getAmount());
+            if (available < minorUnits) {
+                return false;
+            }
+            updated = withMinorUnits(current, available - minorUnits);
+        } while (!compareAndSetBalance(current, updated));
+        return true;
+    }
+
+    private Balance checkedBalance() {
+        Balance current = balance;
+        if (current == null || current.getAmount() == null) {
+            throw new IllegalStateException("Account " + id + " has no balance");
+        }
+        return current;
+    }
+
+    private static long checkedMinorUnits(double amount) {
+        if (!(amount >= 0.)) {
+            throw new IllegalArgumentException("Amount must be non-negative: " + amount);
+        }
+        return CompactBalance.toMinorUnits(amount);
+    }
+
+    private static Balance withMinorUnits(Balance balance, long minorUnits) {
+        return new Balance(CompactBalance.toAmount(minorUnits), balance.getCurrency());
+    }
+}
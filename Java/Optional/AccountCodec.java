@@ -0,0 +1,149 @@
+package com.sitepoint.optional.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A compact binary format for `Account`s, keeping apart every `null` of the object model.
+ *
+ * Record layout:
+ * - a byte of flags, with the same bits as `MappedLedger`: `null` account, `null` account id, `null` balance,
+ *   `null` amount;
+ * - unless the account or its id is `null`, the account id as a zigzag varint (1 byte for ids up to 63, 2 up to
+ *   8191, ...);
+ * - unless the account or its balance is `null`, the currency ordinal, or `NO_CURRENCY` for a `null` currency;
+ * - unless the account, balance or amount is `null`, the amount in minor units (see `CompactBalance`) as a zigzag
+ *   varint.
+ *
+ * A `null` account takes a single byte, and a typical account 5 to 8 bytes. Records are not self-delimiting by
+ * length, but each can be skipped by reading its flags and varints; `AccountView` reads a record in place.
+ */
+final class AccountCodec {
+
+    static final int MAX_VARLONG_LENGTH = 10;
+
+    private static final int KNOWN_FLAGS = MappedLedger.NULL_ACCOUNT | MappedLedger.NULL_ACCOUNT_ID
+            | MappedLedger.NULL_BALANCE | MappedLedger.NULL_AMOUNT;
+
+    private AccountCodec() {
+    }
+
+    public static int encodedLength(Account account) {
+        if (account == null) {
+            return 1;
+        }
+        int length = 1;
+        if (account.getId() != null) {
+            length += varLongLength(zigzag(account.getId()));
+        }
+        Balance balance = account.getBalance();
+        if (balance != null) {
+            length++;
+            if (balance.getAmount() != null) {
+                length += varLongLength(zigzag(CompactBalance.toMinorUnits(balance.getAmount())));
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes `account` at the buffer's position, advancing it.
+     *
+     * @throws java.nio.BufferOverflowException If the buffer has less than `encodedLength(account)` bytes left.
+     */
+    public static void write(ByteBuffer buffer, Account account) {
+        if (account == null) {
+            buffer.put(MappedLedger.NULL_ACCOUNT);
+            return;
+        }
+        Balance balance = account.getBalance();
+        byte flags = 0;
+        if (account.getId() == null) {
+            flags |= MappedLedger.NULL_ACCOUNT_ID;
+        }
+        if (balance == null) {
+            flags |= MappedLedger.NULL_BALANCE | MappedLedger.NULL_AMOUNT;
+        } else if (balance.getAmount() == null) {
+            flags |= MappedLedger.NULL_AMOUNT;
+        }
+        buffer.put(flags);
+        if (account.getId() != null) {
+            writeVarLong(buffer, zigzag(account.getId()));
+        }
+        if (balance != null) {
+            buffer.put(CompactBalance.toOrdinal(balance.getCurrency()));
+            if (balance.getAmount() != null) {
+                writeVarLong(buffer, zigzag(CompactBalance.toMinorUnits(balance.getAmount())));
+            }
+        }
+    }
+
+    /**
+     * Reads the account at the buffer's position, advancing it past the record.
+     *
+     * @throws IllegalArgumentException If the record is malformed.
+     */
+    public static Account read(ByteBuffer buffer) {
+        AccountView view = new AccountView().wrap(buffer, buffer.position());
+        buffer.position(buffer.position() + view.length());
+        return view.toAccount();
+    }
+
+    static int checkedFlags(byte flags) {
+        if ((flags & ~KNOWN_FLAGS) != 0) {
+            throw new IllegalArgumentException("Unknown flags: " + Integer.toHexString(flags & 0xFF));
+        }
+        return flags;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int varLongLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * @return The varint starting at `offset`, regardless of the buffer's position.
+     */
+    static long readVarLong(ByteBuffer buffer, int offset) {
+        long value = 0;
+        for (int i = 0; i < MAX_VARLONG_LENGTH; i++) {
+            byte b = buffer.get(offset + i);
+            value |= (long) (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than " + MAX_VARLONG_LENGTH + " bytes at " + offset);
+    }
+
+    /**
+     * @return The number of bytes of the varint starting at `offset`.
+     */
+    static int skipVarLong(ByteBuffer buffer, int offset) {
+        for (int i = 0; i < MAX_VARLONG_LENGTH; i++) {
+            if (buffer.get(offset + i) >= 0) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than " + MAX_VARLONG_LENGTH + " bytes at " + offset);
+    }
+}
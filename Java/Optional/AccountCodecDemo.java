@@ -0,0 +1,137 @@
+package com.sitepoint.optional.example;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Round-trips accounts through `AccountCodec`, checking that decoding with `read` and reading in place with
+ * `AccountView` both give back exactly what was encoded, `null`s included.
+ *
+ * The cases are the ones of `main()` in `Test` (an account with a balance, an id associated to a `null` account, an
+ * account with a `null` balance), the other `null`s the format keeps apart, edge values, and a random bank.
+ * Exits with status 1 if any check fails.
+ *
+ * Run with `java com.sitepoint.optional.example.AccountCodecDemo`.
+ */
+public class AccountCodecDemo {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        List<Account> cases = Arrays.asList(
+                new Account(1L, new Balance(100., Currency.EURO)),  // Account 1
+                null,  // Account 4: id associated to null in the map
+                new Account(2L, null),  // Account 5: account's balance is null
+                new Account(3L, new Balance(null, Currency.DOLLAR)),
+                new Account(null, new Balance(12.34, Currency.POUND)),
+                new Account(null, null),
+                new Account(6L, new Balance(-0.01, null)),
+                new Account(Long.MIN_VALUE, new Balance(1e15, Currency.DOLLAR)),
+                new Account(Long.MAX_VALUE, new Balance(-1e15, Currency.EURO)));
+
+        for (Account account : cases) {
+            ByteBuffer buffer = ByteBuffer.allocate(AccountCodec.encodedLength(account));
+            AccountCodec.write(buffer, account);
+            check(!buffer.hasRemaining(), "encodedLength matches the bytes written for " + describe(account));
+            buffer.flip();
+
+            AccountView view = new AccountView().wrap(buffer, 0);
+            check(view.length() == buffer.limit(), "view length of " + describe(account));
+            check(view.isNull() == (account == null), "view isNull of " + describe(account));
+            check(view.amountMinorUnits() == expectedMinorUnits(account), "view amount of " + describe(account));
+            check(sameAccount(account, view.toAccount()), "view round-trip of " + describe(account));
+            check(sameAccount(account, AccountCodec.read(buffer)), "read round-trip of " + describe(account));
+            check(buffer.position() == buffer.limit(), "read consumes the record of " + describe(account));
+            System.out.println(describe(account) + ": " + view.length() + " bytes, dollars " + view.toDollarsOrNaN());
+        }
+
+        // Amounts at the limit of minor units must be rejected, never stored as NO_AMOUNT
+        for (double amount : new double[]{CompactBalance.MAX_AMOUNT, Math.nextDown(CompactBalance.MAX_AMOUNT),
+                Math.nextDown(Math.nextDown(CompactBalance.MAX_AMOUNT))}) {
+            for (double signed : new double[]{amount, -amount}) {
+                try {
+                    check(CompactBalance.toMinorUnits(signed) != CompactBalance.NO_AMOUNT,
+                            signed + " is not NO_AMOUNT");
+                } catch (IllegalArgumentException e) {
+                    check(Math.abs(signed) * CompactBalance.MINOR_UNITS_PER_UNIT >= 0x1p63, signed + " is accepted");
+                }
+            }
+        }
+
+        Account[] accounts = RandomBank.generate(new Random(42), 100_000, 0.05, 0.05).values().toArray(new Account[0]);
+        int length = 0;
+        for (Account account : accounts) {
+            length += AccountCodec.encodedLength(account);
+        }
+        ByteBuffer stream = ByteBuffer.allocateDirect(length);
+        long expectedTotal = 0;
+        for (Account account : accounts) {
+            AccountCodec.write(stream, account);
+            long minorUnits = expectedMinorUnits(account);
+            expectedTotal += minorUnits == CompactBalance.NO_AMOUNT ? 0 : minorUnits;
+        }
+        stream.flip();
+
+        // Sums all amounts with a single view, without materializing any account
+        AccountView view = new AccountView();
+        long total = 0;
+        int count = 0;
+        for (int offset = 0; offset < stream.limit(); offset += view.length()) {
+            view.wrap(stream, offset);
+            if (view.hasAmount()) {
+                total += view.amountMinorUnits();
+            }
+            check(sameAccount(accounts[count], view.toAccount()), "stream round-trip of record " + count);
+            count++;
+        }
+        check(count == accounts.length, "stream holds " + accounts.length + " records");
+        check(total == expectedTotal, "stream total amount");
+        System.out.printf("%d random accounts: %d bytes, %.2f bytes/account%n", count, length, (double) length / count);
+
+        if (failures > 0) {
+            System.out.println(failures + " checks FAILED");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.out.println("FAILED: " + description);
+        }
+    }
+
+    private static long expectedMinorUnits(Account account) {
+        if (account == null || account.getBalance() == null) {
+            return CompactBalance.NO_AMOUNT;
+        }
+        return CompactBalance.toMinorUnits(account.getBalance().getAmount());
+    }
+
+    private static boolean sameAccount(Account expected, Account actual) {
+        if (expected == null || actual == null) {
+            return expected == actual;
+        }
+        Balance expectedBalance = expected.getBalance();
+        Balance actualBalance = actual.getBalance();
+        if (expectedBalance == null || actualBalance == null) {
+            return expectedBalance == actualBalance && Objects.equals(expected.getId(), actual.getId());
+        }
+        return Objects.equals(expected.getId(), actual.getId())
+                && Objects.equals(expectedBalance.getAmount(), actualBalance.getAmount())
+                && expectedBalance.getCurrency() == actualBalance.getCurrency();
+    }
+
+    private static String describe(Account account) {
+        if (account == null) {
+            return "null account";
+        }
+        Balance balance = account.getBalance();
+        return "Account(" + account.getId() + ", "
+                + (balance == null ? "null" : "Balance(" + balance.getAmount() + ", " + balance.getCurrency() + ")") + ")";
+    }
+}
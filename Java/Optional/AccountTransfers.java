@@ -0,0 +1,110 @@
+package com.sitepoint.optional.example;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Atomic transfers between accounts.
+ *
+ * A transfer is a `withdraw` from the source followed by a `deposit` to the destination. Both are lock-free, so
+ * deposits and withdrawals on single accounts never wait for transfers; transfers, however, also hold the locks of
+ * the stripes the two accounts map to, so that transfers touching the same accounts don't interleave, and that
+ * `balances` can read a pair of accounts with no transfer between them in flight.
+ * Locks are always acquired in stripe order, so transfers can't deadlock; transfers between accounts on different
+ * stripes run in parallel.
+ */
+final class AccountTransfers {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] stripes;
+
+    public AccountTransfers() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public AccountTransfers(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Stripes must be positive: " + stripes);
+        }
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Moves `amount` from `from` to `to`, which must hold balances in the same currency.
+     *
+     * @return `true` if the transfer happened, `false` if `from` has insufficient funds.
+     * @throws IllegalArgumentException If the accounts are the same, or their currencies differ.
+     * @throws IllegalStateException If either account has no balance.
+     */
+    public boolean transfer(Account from, Account to, double amount) {
+        if (from == to) {
+            throw new IllegalArgumentException("Can't transfer from an account to itself");
+        }
+        int i = stripeOf(from);
+        int j = stripeOf(to);
+        ReentrantLock first = stripes[Math.min(i, j)];
+        ReentrantLock second = stripes[Math.max(i, j)];
+        first.lock();
+        try {
+            second.lock();
+            try {
+                checkSameCurrency(from, to);
+                if (!from.withdraw(amount)) {
+                    return false;
+                }
+                try {
+                    to.deposit(amount);
+                } catch (RuntimeException e) {
+                    from.deposit(amount);
+                    throw e;
+                }
+                return true;
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    /**
+     * Reads the balances of `a` and `b` with no transfer between them in progress.
+     */
+    public Balance[] balances(Account a, Account b) {
+        int i = stripeOf(a);
+        int j = stripeOf(b);
+        ReentrantLock first = stripes[Math.min(i, j)];
+        ReentrantLock second = stripes[Math.max(i, j)];
+        first.lock();
+        try {
+            second.lock();
+            try {
+                return new Balance[]{a.getBalance(), b.getBalance()};
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    private static void checkSameCurrency(Account from, Account to) {
+        Balance source = from.getBalance();
+        Balance destination = to.getBalance();
+        if (source == null || destination == null) {
+            throw new IllegalStateException("Both accounts must have a balance");
+        }
+        if (source.getCurrency() != destination.getCurrency()) {
+            throw new IllegalArgumentException("Currency mismatch: " + source.getCurrency()
+                    + " != " + destination.getCurrency());
+        }
+    }
+
+    private int stripeOf(Account account) {
+        int h = System.identityHashCode(account) * 0x9E3779B9;
+        return (h >>> 1) % stripes.length;
+    }
+}
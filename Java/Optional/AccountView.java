@@ -0,0 +1,135 @@
+package com.sitepoint.optional.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A flyweight reading an `AccountCodec` record in place, without creating an `Account` nor a `Balance`.
+ *
+ * `wrap` only reads the flags and locates the fields; the getters then read them from the buffer with absolute
+ * gets, so the buffer's position is never changed. A view can be re-wrapped over record after record, allocating
+ * nothing: for instance, to add up the amounts of a whole stream of records. Views are mutable, and so not
+ * thread-safe.
+ */
+final class AccountView {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int flags;
+    private int currencyOffset;
+    private int amountOffset;
+    private int length;
+
+    /**
+     * Points the view at the record starting at `offset` in `buffer`.
+     *
+     * @throws IllegalArgumentException If the record is malformed.
+     * @throws IndexOutOfBoundsException If the record is truncated.
+     */
+    public AccountView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        flags = AccountCodec.checkedFlags(buffer.get(offset));
+        int position = offset + 1;
+        if (!isNull() && hasAccountId()) {
+            position += AccountCodec.skipVarLong(buffer, position);
+        }
+        currencyOffset = position;
+        if (hasBalance()) {
+            position++;
+            amountOffset = position;
+            if (hasAmount()) {
+                position += AccountCodec.skipVarLong(buffer, position);
+            }
+        }
+        length = position - offset;
+        return this;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * @return The size of the record in bytes: the next record starts at `offset() + length()`.
+     */
+    public int length() {
+        return length;
+    }
+
+    public boolean isNull() {
+        return (flags & MappedLedger.NULL_ACCOUNT) != 0;
+    }
+
+    public boolean hasAccountId() {
+        return (flags & (MappedLedger.NULL_ACCOUNT | MappedLedger.NULL_ACCOUNT_ID)) == 0;
+    }
+
+    public boolean hasBalance() {
+        return (flags & (MappedLedger.NULL_ACCOUNT | MappedLedger.NULL_BALANCE)) == 0;
+    }
+
+    public boolean hasAmount() {
+        return (flags & (MappedLedger.NULL_ACCOUNT | MappedLedger.NULL_BALANCE | MappedLedger.NULL_AMOUNT)) == 0;
+    }
+
+    /**
+     * @throws IllegalStateException If the account or its id is `null`.
+     */
+    public long accountId() {
+        if (!hasAccountId()) {
+            throw new IllegalStateException("No account id");
+        }
+        return AccountCodec.unzigzag(AccountCodec.readVarLong(buffer, offset + 1));
+    }
+
+    /**
+     * @return The amount in minor units, or `NO_AMOUNT` if the account, its balance or its amount is `null`.
+     */
+    public long amountMinorUnits() {
+        return hasAmount() ? AccountCodec.unzigzag(AccountCodec.readVarLong(buffer, amountOffset)) : CompactBalance.NO_AMOUNT;
+    }
+
+    /**
+     * @return The currency ordinal, or `NO_CURRENCY` if the account, its balance or its currency is `null`.
+     */
+    public byte currencyOrdinal() {
+        return hasBalance() ? buffer.get(currencyOffset) : CompactBalance.NO_CURRENCY;
+    }
+
+    /**
+     * @return The value in dollars, or `NaN` where the chain in `attemptedSolutionOptionalOutputOnly` has none, or if
+     * the currency ordinal is not a known currency.
+     */
+    public double toDollarsOrNaN() {
+        byte currency = currencyOrdinal();
+        if (!isKnownCurrency(currency)) {
+            return Double.NaN;
+        }
+        return CompactBalance.toDollars(amountMinorUnits(), currency);
+    }
+
+    /**
+     * @return A new `Account` equal to the encoded one, or `null` for a `null` account.
+     */
+    public Account toAccount() {
+        if (isNull()) {
+            return null;
+        }
+        Long accountId = hasAccountId() ? accountId() : null;
+        if (!hasBalance()) {
+            return new Account(accountId, null);
+        }
+        Double amount = hasAmount() ? CompactBalance.toAmount(amountMinorUnits()) : null;
+        byte currency = currencyOrdinal();
+        if (currency != CompactBalance.NO_CURRENCY && !isKnownCurrency(currency)) {
+            throw new IllegalArgumentException("Unknown currency ordinal: " + currency);
+        }
+        return new Account(accountId, new Balance(amount, currency == CompactBalance.NO_CURRENCY ? null : CURRENCIES[currency]));
+    }
+
+    private static boolean isKnownCurrency(byte currency) {
+        return currency >= 0 && currency < CURRENCIES.length;
+    }
+}
@@ -0,0 +1,219 @@
+package com.sitepoint.optional.example;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * An asynchronous version of the `findAccount -> extractBalance -> toDollars` chain of
+ * `attemptedSolutionOptionalOutputOnly`, for when `findAccount` blocks on I/O.
+ *
+ * Each lookup runs as its own task, on a virtual thread when the JVM supports them (Java 21+), or on a fixed pool
+ * of `maxConcurrency` platform threads otherwise. A task is only submitted once it holds one of `maxConcurrency`
+ * permits: the other requests wait in a queue, without a thread, and the next one is submitted when a lookup
+ * releases its permit. So at most `maxConcurrency` lookups, and threads, are busy at the same time, however many
+ * requests are pending. Each request must complete within `timeout`, waiting time included, or its future
+ * completes with a `TimeoutException`: it leaves the queue if it was waiting, or its lookup is interrupted.
+ *
+ * Empty results propagate exactly as in the synchronous chain: an empty id completes immediately with
+ * `Optional.empty()` without any lookup, and a missing or `null` account, a `null` balance or a `null` amount all
+ * complete with `Optional.empty()`. Exceptions thrown by `findAccount` complete the future exceptionally.
+ */
+final class AsyncValuation implements AutoCloseable {
+
+    private static final Function<Account, Optional<Balance>> EXTRACT_BALANCE =
+            account -> Optional.ofNullable(account.getBalance());
+
+    private static final Function<Balance, Optional<Double>> TO_DOLLARS = balance -> {
+        if (balance.getAmount() == null) {
+            return Optional.empty();
+        }
+        return Optional.of(balance.getAmount() * ExchangeRates.dollarRates().rate(balance.getCurrency()));
+    };
+
+    private final Function<Long, Optional<Account>> findAccount;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+    private final Queue<Lookup> waiting = new ConcurrentLinkedQueue<>();
+    private final long timeoutNanos;
+
+    /**
+     * Uses a virtual-thread-per-task executor if available, a fixed pool of `maxConcurrency` threads otherwise.
+     */
+    public AsyncValuation(Function<Long, Optional<Account>> findAccount, int maxConcurrency, Duration timeout) {
+        this(findAccount, defaultExecutor(maxConcurrency), true, maxConcurrency, timeout);
+    }
+
+    /**
+     * @param executor Runs the lookups; it is not shut down by `close`.
+     */
+    public AsyncValuation(Function<Long, Optional<Account>> findAccount, ExecutorService executor,
+                          int maxConcurrency, Duration timeout) {
+        this(findAccount, executor, false, maxConcurrency, timeout);
+    }
+
+    private AsyncValuation(Function<Long, Optional<Account>> findAccount, ExecutorService executor,
+                           boolean ownsExecutor, int maxConcurrency, Duration timeout) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Max concurrency must be positive: " + maxConcurrency);
+        }
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Timeout must be positive: " + timeout);
+        }
+        this.findAccount = findAccount;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.permits = new Semaphore(maxConcurrency);
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    public CompletableFuture<Optional<Double>> value(Optional<Long> accountId) {
+        if (!accountId.isPresent()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        Lookup lookup = new Lookup(accountId.get());
+        lookup.result.orTimeout(timeoutNanos, TimeUnit.NANOSECONDS)
+                .whenComplete((value, error) -> {
+                    if (error != null && !waiting.remove(lookup)) {
+                        lookup.cancel();
+                    }
+                });
+        waiting.add(lookup);
+        startWaiting();
+        return lookup.result;
+    }
+
+    /**
+     * Values all of `accountIds` concurrently.
+     *
+     * @return A future completing with the values in the same order as `accountIds`, once all of them are complete;
+     * if any of them fails, it completes exceptionally.
+     */
+    public CompletableFuture<List<Optional<Double>>> valueAll(List<Optional<Long>> accountIds) {
+        List<CompletableFuture<Optional<Double>>> futures = new ArrayList<>(accountIds.size());
+        for (Optional<Long> accountId : accountIds) {
+            futures.add(value(accountId));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<Optional<Double>> values = new ArrayList<>(futures.size());
+                    for (CompletableFuture<Optional<Double>> future : futures) {
+                        values.add(future.join());
+                    }
+                    return values;
+                });
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits waiting lookups for as long as there are permits. Called after a lookup is queued and after a permit
+     * is released, so a lookup queued while all the permits are taken is started by the release of one of them.
+     */
+    private void startWaiting() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Lookup lookup = waiting.poll();
+            if (lookup == null || lookup.result.isDone()) {
+                permits.release();
+                continue;
+            }
+            try {
+                executor.execute(() -> run(lookup));
+            } catch (RuntimeException e) {
+                // Rejected, e.g. once closed: the task will never release the permit.
+                permits.release();
+                lookup.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void run(Lookup lookup) {
+        try {
+            if (lookup.begin()) {
+                try {
+                    lookup.result.complete(findAccount.apply(lookup.id).flatMap(EXTRACT_BALANCE).flatMap(TO_DOLLARS));
+                } finally {
+                    lookup.end();
+                }
+            }
+        } catch (Throwable e) {
+            lookup.result.completeExceptionally(e);
+        } finally {
+            permits.release();
+            startWaiting();
+        }
+    }
+
+    private static ExecutorService defaultExecutor(int maxConcurrency) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+                Thread thread = new Thread(runnable, "async-valuation");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * A request, from the time it is queued until its lookup completes.
+     *
+     * The thread running the lookup is interrupted directly rather than through a `Future`: a task cancelled before
+     * it runs would never release its permit.
+     */
+    private static final class Lookup {
+        final Long id;
+        final CompletableFuture<Optional<Double>> result = new CompletableFuture<>();
+        private Thread runner;
+        private boolean cancelled;
+
+        Lookup(Long id) {
+            this.id = id;
+        }
+
+        /**
+         * @return `false` if the lookup must not run, having timed out already.
+         */
+        synchronized boolean begin() {
+            if (cancelled || result.isDone()) {
+                return false;
+            }
+            runner = Thread.currentThread();
+            return true;
+        }
+
+        synchronized void end() {
+            runner = null;
+            // Clear an interrupt that came too late for the lookup, so it does not leak to the next task.
+            Thread.interrupted();
+        }
+
+        /**
+         * Interrupts the lookup if it is running, and prevents it from starting otherwise.
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.sitepoint.optional.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Checks the concurrency limit and the timeouts of `AsyncValuation`, with a `findAccount` that sleeps to simulate
+ * I/O.
+ *
+ * - Concurrency limit: many more requests than `maxConcurrency` are valued at once; no more than `maxConcurrency`
+ *   lookups may run at the same time, all the values must be right, and on a JVM without virtual threads no more
+ *   than `maxConcurrency` threads may be used.
+ * - Timeouts: a lookup slower than the timeout must fail with a `TimeoutException` and be interrupted, and a request
+ *   that times out while waiting for a permit must never start its lookup.
+ * - Empty results: an empty id, a missing account and a `null` balance complete with `Optional.empty()`.
+ * Exits with status 1 if any check fails.
+ *
+ * Run with `java com.sitepoint.optional.example.AsyncValuationDemo [requests] [maxConcurrency]`.
+ */
+public class AsyncValuationDemo {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int maxConcurrency = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        concurrencyLimit(requests, maxConcurrency);
+        timeouts();
+        emptyResults();
+
+        if (failures > 0) {
+            System.out.println(failures + " checks FAILED");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    private static void concurrencyLimit(int requests, int maxConcurrency) {
+        LongAccountMap bank = new LongAccountMap(requests);
+        for (long id = 0; id < requests; id++) {
+            bank.put(id, new Account(id, new Balance((double) id, Currency.DOLLAR)));
+        }
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        Function<Long, Optional<Account>> findAccount = id -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            threads.add(Thread.currentThread());
+            try {
+                sleep(1);
+                return bank.finder().apply(id);
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+
+        List<Optional<Long>> ids = new ArrayList<>(requests);
+        for (long id = 0; id < requests; id++) {
+            ids.add(Optional.of(id));
+        }
+        long start = System.nanoTime();
+        try (AsyncValuation valuation = new AsyncValuation(findAccount, maxConcurrency, Duration.ofMinutes(1))) {
+            List<Optional<Double>> values = valuation.valueAll(ids).join();
+            long elapsed = System.nanoTime() - start;
+            boolean right = values.size() == requests;
+            for (int i = 0; right && i < requests; i++) {
+                right = values.get(i).equals(Optional.of((double) i));
+            }
+            check(right, "all values right");
+            check(peak.get() <= maxConcurrency, "at most " + maxConcurrency + " lookups at once, saw " + peak.get());
+            if (Runtime.version().feature() < 21) {
+                check(threads.size() <= maxConcurrency,
+                        "at most " + maxConcurrency + " threads, used " + threads.size());
+            }
+            System.out.printf("%d requests, max concurrency %d: peak %d lookups on %d threads, %.0f requests/s%n",
+                    requests, maxConcurrency, peak.get(), threads.size(), requests * 1e9 / elapsed);
+        }
+    }
+
+    private static void timeouts() {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicInteger started = new AtomicInteger();
+        // Sleeps `id` milliseconds, noting an interrupt but not giving up, like a lookup stuck in I/O
+        Function<Long, Optional<Account>> findAccount = id -> {
+            started.incrementAndGet();
+            long end = System.nanoTime() + id * 1_000_000;
+            while (System.nanoTime() < end) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+            return Optional.of(new Account(id, new Balance(1., Currency.DOLLAR)));
+        };
+        try (AsyncValuation valuation = new AsyncValuation(findAccount, 1, Duration.ofMillis(100))) {
+            // The first lookup holds the only permit past the timeout, so the second one times out while waiting
+            CompletableFuture<Optional<Double>> slow = valuation.value(Optional.of(500L));
+            CompletableFuture<Optional<Double>> queued = valuation.value(Optional.of(0L));
+            check(timedOut(slow), "slow lookup times out");
+            check(timedOut(queued), "waiting request times out");
+            sleep(600);
+            check(interrupted.get(), "slow lookup interrupted");
+            check(started.get() == 1, "waiting request never looked up, lookups started: " + started.get());
+
+            // Permits are back once the interrupted lookup returns
+            check(valuation.value(Optional.of(0L)).join().equals(Optional.of(1.)), "valuation after timeouts");
+        }
+    }
+
+    private static void emptyResults() {
+        LongAccountMap bank = new LongAccountMap(4);
+        bank.put(1L, new Account(1L, null));
+        try (AsyncValuation valuation = new AsyncValuation(bank.finder(), 2, Duration.ofSeconds(10))) {
+            check(valuation.value(Optional.empty()).isDone(), "empty id completes at once");
+            check(!valuation.value(Optional.of(1L)).join().isPresent(), "null balance is empty");
+            check(!valuation.value(Optional.of(2L)).join().isPresent(), "missing account is empty");
+        }
+    }
+
+    private static boolean timedOut(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return false;
+        } catch (CompletionException e) {
+            return e.getCause() instanceof TimeoutException;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.out.println("FAILED: " + description);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.sitepoint.optional.example;
+
+class Balance {
+    private Double amount;
+    private Currency currency;
+
+    public Balance(Double amount, Currency currency) {
+        this.amount = amount;
+        this.currency = currency;
+    }
+
+    public Balance(Double amount) {
+        this(amount, Currency.DOLLAR);
+    }
+
+    public Double getAmount() {
+        return amount;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+}
@@ -0,0 +1,100 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * The bank, the `findAccount -> extractBalance -> toDollars` chain of `attemptedSolutionOptionalOutputOnly` and the
+ * account ids used by the examples, built once and shared, for short-lived jobs that only need a few valuations.
+ *
+ * Each group is built by the static initializer of its own holder class, which the JVM runs the first time the
+ * group is accessed, exactly once and thread-safely, without any locking on later accesses. So a job only pays for
+ * what it uses: `findAccount()` doesn't build the ids, and nothing is built before the first call. A
+ * class-data-sharing archive (see `cds.sh`) only keeps the classes: the holders are still initialized in every run.
+ *
+ * The map returned by `bank()` is unmodifiable, but its accounts are not: `deposit` and `withdraw` change their
+ * balance, and every caller sharing the bank sees the change.
+ */
+final class BankBootstrap {
+
+    private BankBootstrap() {
+    }
+
+    /**
+     * @return The accounts of the examples, in an unmodifiable map: account 1 has a balance of 100 euros, account
+     * 4 is associated to `null` and account 5 has a `null` balance.
+     */
+    public static Map<Long, Account> bank() {
+        return BankHolder.BANK;
+    }
+
+    public static Function<Long, Optional<Account>> findAccount() {
+        return ChainHolder.FIND_ACCOUNT;
+    }
+
+    public static Function<Account, Optional<Balance>> extractBalance() {
+        return ChainHolder.EXTRACT_BALANCE;
+    }
+
+    public static Function<Balance, Optional<Double>> toDollars() {
+        return ChainHolder.TO_DOLLARS;
+    }
+
+    /**
+     * @return The whole chain, fused into a single `OptionalPipeline`.
+     */
+    public static OptionalPipeline<Long, Double> valuation() {
+        return ChainHolder.VALUATION;
+    }
+
+    /**
+     * @return The ids of the examples: `Optional.of(1L)`, `Optional.empty()`, `Optional.of(3L)`, `Optional.of(4L)`
+     * and `Optional.of(5L)`.
+     */
+    public static List<Optional<Long>> accountIds() {
+        return IdsHolder.ACCOUNT_IDS;
+    }
+
+    public static Optional<Double> value(Optional<Long> accountId) {
+        return accountId.flatMap(ChainHolder.VALUATION);
+    }
+
+    private static final class BankHolder {
+        static final Map<Long, Account> BANK;
+
+        static {
+            Map<Long, Account> bank = new HashMap<>();
+            bank.put(1L, new Account(1L, new Balance(100., Currency.EURO)));
+            bank.put(4L, null);
+            bank.put(5L, new Account(2L, null));
+            BANK = Collections.unmodifiableMap(bank);
+        }
+    }
+
+    private static final class ChainHolder {
+        static final Function<Long, Optional<Account>> FIND_ACCOUNT = id -> Optional.ofNullable(BankHolder.BANK.get(id));
+
+        static final Function<Account, Optional<Balance>> EXTRACT_BALANCE =
+                account -> Optional.ofNullable(account.getBalance());
+
+        static final Function<Balance, Optional<Double>> TO_DOLLARS = balance -> {
+            if (balance.getAmount() == null || balance.getCurrency() == null) {
+                return Optional.empty();
+            }
+            return Optional.of(balance.getAmount() * ExchangeRates.dollarRates().rate(balance.getCurrency()));
+        };
+
+        static final OptionalPipeline<Long, Double> VALUATION =
+                OptionalPipeline.of(FIND_ACCOUNT).then(EXTRACT_BALANCE).then(TO_DOLLARS);
+    }
+
+    private static final class IdsHolder {
+        static final List<Optional<Long>> ACCOUNT_IDS = Collections.unmodifiableList(Arrays.asList(
+                Optional.of(1L), Optional.empty(), Optional.of(3L), Optional.of(4L), Optional.of(5L)));
+    }
+}
@@ -0,0 +1,71 @@
+package com.sitepoint.optional.example;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Values the whole bank, producing the total exposure broken down by source currency.
+ *
+ * The parallel version splits the slots of a `LongAccountMap` into ranges and values them as fork/join tasks.
+ * Each leaf task accumulates into its own `CurrencyTotals`, and partial totals are merged while joining, so
+ * threads never write to shared state. Since totals are kept in minor units, the parallel result is exactly the
+ * same as the sequential one, whatever the split.
+ *
+ * The bank must not be modified while it is being valued.
+ */
+final class BankValuation {
+
+    /**
+     * Ranges with fewer slots than this are valued sequentially.
+     */
+    static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+
+    private BankValuation() {
+    }
+
+    public static CurrencyTotals sequential(LongAccountMap bank) {
+        return valueSlots(bank, 0, bank.capacity());
+    }
+
+    public static CurrencyTotals parallel(LongAccountMap bank) {
+        return parallel(bank, ForkJoinPool.commonPool());
+    }
+
+    public static CurrencyTotals parallel(LongAccountMap bank, ForkJoinPool pool) {
+        return pool.invoke(new ValuationTask(bank, 0, bank.capacity()));
+    }
+
+    private static CurrencyTotals valueSlots(LongAccountMap bank, int from, int to) {
+        CurrencyTotals totals = new CurrencyTotals();
+        for (int slot = from; slot < to; slot++) {
+            totals.add(bank.valueAt(slot));
+        }
+        return totals;
+    }
+
+    private static final class ValuationTask extends RecursiveTask<CurrencyTotals> {
+        private static final long serialVersionUID = 1L;
+
+        private final LongAccountMap bank;
+        private final int from;
+        private final int to;
+
+        ValuationTask(LongAccountMap bank, int from, int to) {
+            this.bank = bank;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected CurrencyTotals compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                return valueSlots(bank, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            ValuationTask left = new ValuationTask(bank, from, middle);
+            left.fork();
+            CurrencyTotals right = new ValuationTask(bank, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+
+/**
+ * Converts whole arrays of account ids into dollars, with the same semantics as the `flatMap` chain in
+ * `attemptedSolutionOptionalOutputOnly`: an id that is not in the bank, an id associated to a `null` account,
+ * an account with a `null` balance and a balance with a `null` amount all yield "no value".
+ *
+ * Results are written into a caller-provided `double[]`, and whether each of them is present into a bitmap
+ * (bit `i % 64` of word `i / 64`), so no `Optional` nor boxed `Double` is created per element.
+ * The work is split in two passes: a gather pass, which chases the pointers from the bank to the balances and
+ * writes amounts and rates into flat arrays, and a branch-free multiply pass over those arrays, which the JIT can
+ * unroll and vectorize. Rates are read once per call from `ExchangeRates.dollarRates()`, so all the values in a
+ * batch are converted with the same set of rates.
+ *
+ * Instances reuse an internal scratch array, so they are not thread-safe: use one per thread.
+ */
+final class BatchValuation {
+
+    private final LongAccountMap bank;
+    private double[] rates = new double[0];
+
+    public BatchValuation(LongAccountMap bank) {
+        this.bank = bank;
+    }
+
+    /**
+     * @param ids     The ids of the accounts to value.
+     * @param dollars Receives, at index `i`, the value in dollars of account `ids[i]`, or `0.` if there is none.
+     * @param present Receives the presence bitmap; must hold at least `bitmapLength(ids.length)` words.
+     * @return The number of ids for which a value is present.
+     */
+    public int toDollars(long[] ids, double[] dollars, long[] present) {
+        int n = ids.length;
+        if (dollars.length < n || present.length < bitmapLength(n)) {
+            throw new IllegalArgumentException("Output arrays too small for " + n + " ids");
+        }
+        if (rates.length < n) {
+            rates = new double[n];
+        }
+        double[] rates = this.rates;
+        double[] table = ExchangeRates.dollarRates().table();
+        Arrays.fill(present, 0, bitmapLength(n), 0L);
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            Account account = bank.get(ids[i]);
+            Balance balance = account == null ? null : account.getBalance();
+            Double amount = balance == null ? null : balance.getAmount();
+            if (amount == null || balance.getCurrency() == null) {
+                dollars[i] = 0.;
+                rates[i] = 0.;
+            } else {
+                dollars[i] = amount;
+                rates[i] = table[balance.getCurrency().ordinal()];
+                present[i >>> 6] |= 1L << i;
+                count++;
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            dollars[i] *= rates[i];
+        }
+        return count;
+    }
+
+    public static int bitmapLength(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    public static boolean isPresent(long[] bitmap, int index) {
+        return (bitmap[index >>> 6] & (1L << index)) != 0;
+    }
+}
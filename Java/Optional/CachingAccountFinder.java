@@ -0,0 +1,209 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded, memoizing decorator for `findAccount`-like functions, for when the lookup hits a slow backing store
+ * rather than an in-memory map.
+ *
+ * Results are cached as they are, `Optional.empty()` included: ids that are not in the store, or that are associated
+ * to `null` (ids 3 and 4 in the examples), are negatively cached and don't hit the store again until they are
+ * evicted or invalidated. A `null` id is passed straight to the store and its result is never cached, since
+ * `ConcurrentHashMap` has no `null` keys.
+ *
+ * Eviction uses the CLOCK algorithm, an approximation of LRU: a hit only sets a flag on the cached entry, and the
+ * entries are kept in a ring that is scanned on insertion, giving a second chance to those accessed since the last
+ * scan. Hits are served by `ConcurrentHashMap.get` and never take a lock; only misses, which are about to pay for a
+ * call to the store anyway, synchronize to update the ring.
+ * Two threads missing on the same id at the same time may both call the store; the first result is cached.
+ *
+ * A miss reads the version of its id before calling the store, and its result is only cached if the version is
+ * unchanged: `invalidate` bumps the version of the id and `invalidateAll` the versions of all ids, so a lookup that
+ * was already running when its id was invalidated can't cache the stale result afterwards. Versions are kept per
+ * stripe of ids rather than per id, so that they take bounded memory; invalidating an id may also keep a concurrent
+ * lookup of another id in the same stripe from being cached, which only costs a later miss.
+ */
+final class CachingAccountFinder implements Function<Long, Optional<Account>> {
+
+    private static final int MAX_STRIPES = 1 << 12;
+
+    private final Function<Long, Optional<Account>> source;
+    private final ConcurrentHashMap<Long, Entry> entries;
+
+    // Versions of the stripes of ids, and of all ids; only changed while holding `ring`.
+    private final AtomicLongArray versions;
+    private volatile long generation;
+
+    // The CLOCK ring, guarded by `ring` itself.
+    private final Entry[] ring;
+    private int hand;
+    private int size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingAccountFinder(Function<Long, Optional<Account>> source, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.source = source;
+        this.entries = new ConcurrentHashMap<>(capacity);
+        this.ring = new Entry[capacity];
+        this.versions = new AtomicLongArray(Math.min(Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1, MAX_STRIPES));
+    }
+
+    @Override
+    public Optional<Account> apply(Long id) {
+        if (id == null) {
+            misses.increment();
+            return source.apply(id);
+        }
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            hits.increment();
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            return entry.value;
+        }
+        misses.increment();
+        long version = version(id);
+        Optional<Account> value = source.apply(id);
+        return admit(id, value, version);
+    }
+
+    /**
+     * Drops the cached result for `id`, if any, so that the next lookup goes to the backing store.
+     */
+    public void invalidate(Long id) {
+        if (id == null) {
+            return;
+        }
+        synchronized (ring) {
+            int stripe = stripe(id);
+            versions.set(stripe, versions.get(stripe) + 1);
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                ring[entry.slot] = null;
+                size--;
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (ring) {
+            generation++;
+            entries.clear();
+            Arrays.fill(ring, null);
+            size = 0;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CachingAccountFinder[size=" + size() + ", hits=" + hitCount() + ", misses=" + missCount()
+                + ", evictions=" + evictionCount() + "]";
+    }
+
+    /**
+     * Caches `value` for `id`, unless `id` was invalidated since `version` was read.
+     *
+     * @return The cached value for `id`, or `value` if it wasn't cached.
+     */
+    private Optional<Account> admit(Long id, Optional<Account> value, long version) {
+        synchronized (ring) {
+            if (version(id) != version) {
+                return value;
+            }
+            Entry cached = entries.get(id);
+            if (cached != null) {
+                return cached.value;
+            }
+            int slot = size < ring.length ? freeSlot() : evictSlot();
+            Entry entry = new Entry(id, value, slot);
+            ring[slot] = entry;
+            size++;
+            entries.put(id, entry);
+            return value;
+        }
+    }
+
+    /**
+     * @return A number that changes whenever `id` is invalidated: both terms only ever increase.
+     */
+    private long version(Long id) {
+        return generation + versions.get(stripe(id));
+    }
+
+    private int stripe(Long id) {
+        int hash = id.hashCode();
+        return (hash ^ (hash >>> 16)) & (versions.length() - 1);
+    }
+
+    private int freeSlot() {
+        while (ring[hand] != null) {
+            advanceHand();
+        }
+        int slot = hand;
+        advanceHand();
+        return slot;
+    }
+
+    private int evictSlot() {
+        while (ring[hand].referenced) {
+            ring[hand].referenced = false;
+            advanceHand();
+        }
+        Entry victim = ring[hand];
+        entries.remove(victim.id);
+        ring[hand] = null;
+        size--;
+        evictions.increment();
+        int slot = hand;
+        advanceHand();
+        return slot;
+    }
+
+    private void advanceHand() {
+        hand = hand + 1 == ring.length ? 0 : hand + 1;
+    }
+
+    private static final class Entry {
+        final Long id;
+        final Optional<Account> value;
+        final int slot;
+        volatile boolean referenced;
+
+        Entry(Long id, Optional<Account> value, int slot) {
+            this.id = id;
+            this.value = value;
+            this.slot = slot;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Per-stage counters for the `findAccount -> extractBalance -> toDollars` chain of
+ * `attemptedSolutionOptionalOutputOnly`, telling apart why a valuation came back empty:
+ * - `MISSING_ID`: `findAccount` was empty because the id is not in the bank;
+ * - `NULL_ACCOUNT`: `findAccount` was empty because the id is associated to `null` (`bank.put(4L, null)`);
+ * - `NULL_BALANCE`: `extractBalance` was empty (`new Account(2L, null)`);
+ * - `NULL_AMOUNT`: `toDollars` was empty (`new Balance(null, Currency.DOLLAR)`).
+ *
+ * `instrumentChain` builds the whole chain with the counters inlined, so that a valuation makes a single sampling
+ * decision and goes through a single function.
+ *
+ * Empty results, their causes and exceptions are counted exactly: they only cost something on the paths where they
+ * happen. Latencies are only measured for a random sample of the valuations, one in `sampleRate` on average, and
+ * so are invocations, which would otherwise cost a counter update per stage on every call; `snapshot` scales the
+ * sampled invocations by `sampleRate`, so they are unbiased estimates of the totals, with a relative error of about
+ * `1 / sqrt(sampled count)`. A `sampleRate` of 1 times and counts every call, at a higher cost.
+ * All counters are `LongAdder`s, so threads running the chain concurrently don't contend on them. `snapshot` reads
+ * all counters without stopping the writers, so a snapshot taken under load is not an atomic cut.
+ */
+final class ChainMetrics {
+
+    enum Stage {
+        FIND_ACCOUNT, EXTRACT_BALANCE, TO_DOLLARS
+    }
+
+    enum EmptyCause {
+        MISSING_ID, NULL_ACCOUNT, NULL_BALANCE, NULL_AMOUNT
+    }
+
+    static final int DEFAULT_SAMPLE_RATE = 1024;
+    static final int HISTOGRAM_BUCKETS = 64;
+
+    private static final int SAMPLING_STRIPES = 64;
+    // 16 ints apart, two stripes are on different 64-byte cache lines
+    private static final int STRIPE_STRIDE = 16;
+
+    private final int sampleRate;
+    private final LongAdder[] invocations = adders(Stage.values().length);
+    private final LongAdder[] exceptions = adders(Stage.values().length);
+    private final LongAdder[] causes = adders(EmptyCause.values().length);
+    private final LongAdder[][] latencies = new LongAdder[Stage.values().length][];
+
+    public ChainMetrics() {
+        this(DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * @param sampleRate One valuation out of `sampleRate`, on average, is timed; must be a power of two.
+     */
+    public ChainMetrics(int sampleRate) {
+        if (sampleRate <= 0 || Integer.bitCount(sampleRate) != 1) {
+            throw new IllegalArgumentException("Sample rate must be a power of two: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = adders(HISTOGRAM_BUCKETS);
+        }
+    }
+
+    /**
+     * Builds the chain `findAccount.apply(id).flatMap(extractBalance).flatMap(toDollars)`, with counters.
+     *
+     * @param isMapped Tells whether an id is in the bank (possibly associated to `null`), e.g.
+     *                 `LongAccountMap::containsKey` or `Map::containsKey`; used to classify empty results.
+     */
+    public Function<Long, Optional<Double>> instrumentChain(Function<Long, Optional<Account>> findAccount,
+                                                          Predicate<Long> isMapped,
+                                                          Function<Account, Optional<Balance>> extractBalance,
+                                                          Function<Balance, Optional<Double>> toDollars) {
+        return new InstrumentedChain(findAccount, isMapped, extractBalance, toDollars);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(sampleRate, sums(invocations), sums(exceptions), sums(causes),
+                histograms());
+    }
+
+    public void reset() {
+        for (LongAdder adder : invocations) {
+            adder.reset();
+        }
+        for (LongAdder adder : exceptions) {
+            adder.reset();
+        }
+        for (LongAdder adder : causes) {
+            adder.reset();
+        }
+        for (LongAdder[] histogram : latencies) {
+            for (LongAdder adder : histogram) {
+                adder.reset();
+            }
+        }
+    }
+
+    /**
+     * The chain of `instrumentChain` for a sampled valuation, which also counts and times the invocation of each
+     * stage. Each stage is timed from the end of the previous one, so it takes one `System.nanoTime` per stage, plus
+     * one.
+     */
+    private Optional<Double> timedValue(Long id, Function<Long, Optional<Account>> findAccount,
+                                        Predicate<Long> isMapped,
+                                        Function<Account, Optional<Balance>> extractBalance,
+                                        Function<Balance, Optional<Double>> toDollars) {
+        Stage stage = Stage.FIND_ACCOUNT;
+        try {
+            long start = System.nanoTime();
+            Optional<Account> account = findAccount.apply(id);
+            start = record(Stage.FIND_ACCOUNT, start);
+            if (!account.isPresent()) {
+                emptyFindAccount(id, isMapped);
+                return Optional.empty();
+            }
+            stage = Stage.EXTRACT_BALANCE;
+            Optional<Balance> balance = extractBalance.apply(account.get());
+            start = record(Stage.EXTRACT_BALANCE, start);
+            if (!balance.isPresent()) {
+                causes[EmptyCause.NULL_BALANCE.ordinal()].increment();
+                return Optional.empty();
+            }
+            stage = Stage.TO_DOLLARS;
+            Optional<Double> dollars = toDollars.apply(balance.get());
+            record(Stage.TO_DOLLARS, start);
+            if (!dollars.isPresent()) {
+                causes[EmptyCause.NULL_AMOUNT.ordinal()].increment();
+            }
+            return dollars;
+        } catch (RuntimeException | Error e) {
+            exceptions[stage.ordinal()].increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Counts a sampled invocation of `stage` that started at `start`, and records its latency.
+     *
+     * @return The time it ended, which is when the next stage starts.
+     */
+    private long record(Stage stage, long start) {
+        long end = System.nanoTime();
+        invocations[stage.ordinal()].increment();
+        latencies[stage.ordinal()][bucketOf(end - start)].increment();
+        return end;
+    }
+
+    private void emptyFindAccount(Long id, Predicate<Long> isMapped) {
+        causes[(isMapped.test(id) ? EmptyCause.NULL_ACCOUNT : EmptyCause.MISSING_ID).ordinal()].increment();
+    }
+
+    /**
+     * The chain built by `instrumentChain`. A valuation that isn't sampled runs the stages right in `apply`, only
+     * counting empty results and exceptions, so that the JIT can compile it as a single method like the plain chain.
+     */
+    private final class InstrumentedChain implements Function<Long, Optional<Double>> {
+        private final Function<Long, Optional<Account>> findAccount;
+        private final Predicate<Long> isMapped;
+        private final Function<Account, Optional<Balance>> extractBalance;
+        private final Function<Balance, Optional<Double>> toDollars;
+        private final int[] countdowns = new int[SAMPLING_STRIPES * STRIPE_STRIDE];
+
+        InstrumentedChain(Function<Long, Optional<Account>> findAccount, Predicate<Long> isMapped,
+                          Function<Account, Optional<Balance>> extractBalance,
+                          Function<Balance, Optional<Double>> toDollars) {
+            this.findAccount = findAccount;
+            this.isMapped = isMapped;
+            this.extractBalance = extractBalance;
+            this.toDollars = toDollars;
+        }
+
+        @Override
+        public Optional<Double> apply(Long id) {
+            if (sampled()) {
+                return timedValue(id, findAccount, isMapped, extractBalance, toDollars);
+            }
+            Stage stage = Stage.FIND_ACCOUNT;
+            try {
+                Optional<Account> account = findAccount.apply(id);
+                if (!account.isPresent()) {
+                    emptyFindAccount(id, isMapped);
+                    return Optional.empty();
+                }
+                stage = Stage.EXTRACT_BALANCE;
+                Optional<Balance> balance = extractBalance.apply(account.get());
+                if (!balance.isPresent()) {
+                    causes[EmptyCause.NULL_BALANCE.ordinal()].increment();
+                    return Optional.empty();
+                }
+                stage = Stage.TO_DOLLARS;
+                Optional<Double> dollars = toDollars.apply(balance.get());
+                if (!dollars.isPresent()) {
+                    causes[EmptyCause.NULL_AMOUNT.ordinal()].increment();
+                }
+                return dollars;
+            } catch (RuntimeException | Error e) {
+                exceptions[stage.ordinal()].increment();
+                throw e;
+            }
+        }
+
+        /**
+         * @return Whether to time this valuation. Each thread counts down the valuations in its own stripe of
+         * `countdowns`, and only when it reaches 0 draws from `ThreadLocalRandom` how many valuations to skip before
+         * the next sample: a random interval averaging `sampleRate`, so that sampling can't lock onto a periodic
+         * workload. A valuation that isn't sampled only decrements a counter on a cache line of its own, which no
+         * other thread writes unless more than `SAMPLING_STRIPES` threads run the chain; they may then lose some
+         * decrements, which only makes sampling a little rarer.
+         */
+        private boolean sampled() {
+            int stripe = ((int) Thread.currentThread().getId() & (SAMPLING_STRIPES - 1)) * STRIPE_STRIDE;
+            if (--countdowns[stripe] > 0) {
+                return false;
+            }
+            countdowns[stripe] = sampleRate == 1 ? 1 : 1 + ThreadLocalRandom.current().nextInt(2 * sampleRate - 1);
+            return true;
+        }
+    }
+
+    /**
+     * Bucket `i` holds latencies in `[2^(i-1), 2^i)` nanoseconds; bucket 0 holds zero.
+     */
+    static int bucketOf(long nanos) {
+        return nanos <= 0 ? 0 : Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    private long[][] histograms() {
+        long[][] histograms = new long[latencies.length][];
+        for (int i = 0; i < latencies.length; i++) {
+            histograms[i] = sums(latencies[i]);
+        }
+        return histograms;
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+
+    /**
+     * An immutable copy of the counters. Invocations are estimates of the totals, the sampled counts times the sample
+     * rate; empty results, their causes and exceptions are exact.
+     */
+    static final class Snapshot {
+        private final int sampleRate;
+        private final long[] invocations;
+        private final long[] exceptions;
+        private final long[] causes;
+        private final long[][] histograms;
+
+        Snapshot(int sampleRate, long[] invocations, long[] exceptions, long[] causes,
+                 long[][] histograms) {
+            this.sampleRate = sampleRate;
+            this.invocations = invocations;
+            this.exceptions = exceptions;
+            this.causes = causes;
+            this.histograms = histograms;
+        }
+
+        public int sampleRate() {
+            return sampleRate;
+        }
+
+        /**
+         * @return The number of valuations actually timed, from which the invocations are extrapolated.
+         */
+        public long sampledValuations() {
+            return invocations[Stage.FIND_ACCOUNT.ordinal()];
+        }
+
+        public long valuations() {
+            return invocations(Stage.FIND_ACCOUNT);
+        }
+
+        public long invocations(Stage stage) {
+            return invocations[stage.ordinal()] * sampleRate;
+        }
+
+        /**
+         * @return How many invocations of `stage` were empty: the sum of the causes of that stage.
+         */
+        public long empties(Stage stage) {
+            switch (stage) {
+                case FIND_ACCOUNT:
+                    return empties(EmptyCause.MISSING_ID) + empties(EmptyCause.NULL_ACCOUNT);
+                case EXTRACT_BALANCE:
+                    return empties(EmptyCause.NULL_BALANCE);
+                default:
+                    return empties(EmptyCause.NULL_AMOUNT);
+            }
+        }
+
+        /**
+         * @return How many invocations of `stage` threw an exception.
+         */
+        public long exceptions(Stage stage) {
+            return exceptions[stage.ordinal()];
+        }
+
+        public long empties(EmptyCause cause) {
+            return causes[cause.ordinal()];
+        }
+
+        /**
+         * @return The number of sampled invocations of `stage` in each latency bucket (see `bucketOf`).
+         */
+        public long[] latencyHistogram(Stage stage) {
+            return histograms[stage.ordinal()].clone();
+        }
+
+        /**
+         * @return An upper bound, in nanoseconds, of the `p`-th quantile of the sampled latencies of `stage`, or 0
+         * if no invocation was sampled, or `Long.MAX_VALUE` if it falls in the last bucket.
+         */
+        public long latencyPercentile(Stage stage, double p) {
+            long[] histogram = histograms[stage.ordinal()];
+            long total = Arrays.stream(histogram).sum();
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0) {
+                    if (i == 0) {
+                        return 0;
+                    }
+                    // The last bucket also holds everything above it
+                    return i == HISTOGRAM_BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("ChainMetrics[timing 1/").append(sampleRate).append(", ");
+            for (Stage stage : Stage.values()) {
+                sb.append(stage).append(": invocations=").append(invocations(stage))
+                        .append(", empties=").append(empties(stage))
+                        .append(", exceptions=").append(exceptions(stage))
+                        .append(", p50<=").append(latencyPercentile(stage, 0.5)).append("ns")
+                        .append(", p99<=").append(latencyPercentile(stage, 0.99)).append("ns; ");
+            }
+            for (EmptyCause cause : EmptyCause.values()) {
+                sb.append(cause).append('=').append(empties(cause)).append(", ");
+            }
+            sb.setLength(sb.length() - 2);
+            return sb.append(']').toString();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Measures the overhead of `ChainMetrics` on the `findAccount -> extractBalance -> toDollars` chain of
+ * `attemptedSolutionOptionalOutputOnly`, by valuing the same random ids with the plain chain and with the chain built
+ * by `ChainMetrics.instrumentChain`. Each round runs both back to back, in an order that alternates every round,
+ * and the overhead reported is the median over the rounds of the ratio of the instrumented chain to the plain chain
+ * of the same round, so that drifts of the machine's speed cancel out.
+ *
+ * By default `findAccount` is the in-memory lookup of the examples, the case where the counters cost the most
+ * relative to the chain; `storeLatencyNanos` emulates a slower store by busy-waiting in `findAccount`.
+ *
+ * Run with `java com.sitepoint.optional.example.ChainMetricsBenchmark [bankSize] [rounds] [storeLatencyNanos]`.
+ */
+public class ChainMetricsBenchmark {
+
+    private static final int OPERATIONS = 1 << 21;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 21;
+        long storeLatencyNanos = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int operations = storeLatencyNanos > 0 ? OPERATIONS >> 4 : OPERATIONS;
+
+        Random random = new Random(42);
+        LongAccountMap bank = LongAccountMap.of(RandomBank.generate(random, size, 0.05, 0.05));
+        long[] ids = RandomBank.ids(random, operations, size, 0.9);
+
+        Function<Long, Optional<Account>> lookup = bank.finder();
+        Function<Long, Optional<Account>> findAccount = storeLatencyNanos <= 0 ? lookup : id -> {
+            long deadline = System.nanoTime() + storeLatencyNanos;
+            while (System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            return lookup.apply(id);
+        };
+        Function<Account, Optional<Balance>> extractBalance = account -> Optional.ofNullable(account.getBalance());
+        Function<Balance, Optional<Double>> toDollars = balance -> balance.getAmount() == null
+                ? Optional.empty()
+                : Optional.of(balance.getAmount() * ExchangeRates.dollarRates().rate(balance.getCurrency()));
+
+        Function<Long, Optional<Double>> plain = id -> findAccount.apply(id).flatMap(extractBalance).flatMap(toDollars);
+
+        ChainMetrics chainMetrics = new ChainMetrics();
+        Function<Long, Optional<Double>> chain =
+                chainMetrics.instrumentChain(findAccount, bank::containsKey, extractBalance, toDollars);
+
+        List<Function<Long, Optional<Double>>> valuations = Arrays.asList(plain, chain);
+        long[][] times = new long[valuations.size()][rounds];
+        double sink = 0.;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < valuations.size(); i++) {
+                int v = (i + round) % valuations.size();
+                long start = System.nanoTime();
+                sink += run(ids, valuations.get(v));
+                times[v][round] = System.nanoTime() - start;
+            }
+        }
+
+        double plainNanos = (double) median(times[0]) / operations;
+        System.out.printf("Plain chain:            %.2f ns/op%n", plainNanos);
+        System.out.printf("Instrumented chain:     %.2f ns/op (%+.1f%%)%n", plainNanos * medianRatio(times[1], times[0]),
+                100. * (medianRatio(times[1], times[0]) - 1.));
+        System.out.println(chainMetrics.snapshot());
+        System.out.println("Checksum: " + sink);
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static double medianRatio(long[] times, long[] baseline) {
+        double[] ratios = new double[times.length];
+        for (int i = 0; i < times.length; i++) {
+            ratios[i] = (double) times[i] / baseline[i];
+        }
+        Arrays.sort(ratios);
+        return ratios[ratios.length / 2];
+    }
+
+    private static double run(long[] ids, Function<Long, Optional<Double>> valuation) {
+        double total = 0.;
+        for (long id : ids) {
+            total += valuation.apply(id).orElse(0.);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,294 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable, column-oriented copy of a bank, for scans and aggregates over all accounts.
+ *
+ * Row `i` is spread over parallel arrays: `ids[i]` is its key in the bank, `accountIds[i]` the id of the account,
+ * `amounts[i]` the amount of its balance in minor units (see `CompactBalance`) and `currencies[i]` the ordinal of
+ * its currency. The `null`s of the object model are kept in bitmaps (bit `i % 64` of word `i / 64`, as in
+ * `BatchValuation`): `null` account, `null` account id, `null` balance and `null` amount. A row without an amount
+ * holds `0` in `amounts`, and a row without a balance or currency holds `NO_CURRENCY` in `currencies`, so that
+ * aggregates can add up a column without testing the bitmaps. Rows are sorted by id.
+ *
+ * Keeping amounts in minor units makes the copy lossy: amounts are rounded to the nearest minor unit, so
+ * `accountAt` and `toAccountMap` return `12.35` for an account created with `12.345`, and `of` throws an
+ * `IllegalArgumentException` for an amount too large for `CompactBalance.toMinorUnits`. All the `null`s, ids and
+ * currencies round-trip exactly.
+ *
+ * Filters return a selection bitmap of the rows matching them, which can be combined with `and` and passed to the
+ * aggregates: for instance, `sumDollars(whereCurrency(Currency.EURO))`. Aggregates, like `CurrencyTotals`, only
+ * count the balances the `flatMap` chain in `attemptedSolutionOptionalOutputOnly` would turn into a value.
+ */
+final class ColumnarBank {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final int size;
+    private final long[] ids;
+    private final long[] accountIds;
+    private final long[] amounts;
+    private final byte[] currencies;
+    private final long[] nullAccounts;
+    private final long[] nullAccountIds;
+    private final long[] nullBalances;
+    private final long[] nullAmounts;
+
+    private ColumnarBank(int size) {
+        this.size = size;
+        ids = new long[size];
+        accountIds = new long[size];
+        amounts = new long[size];
+        currencies = new byte[size];
+        nullAccounts = new long[BatchValuation.bitmapLength(size)];
+        nullAccountIds = new long[nullAccounts.length];
+        nullBalances = new long[nullAccounts.length];
+        nullAmounts = new long[nullAccounts.length];
+    }
+
+    /**
+     * @throws IllegalArgumentException If an amount can't be represented in minor units.
+     */
+    public static ColumnarBank of(LongAccountMap bank) {
+        long[] ids = new long[bank.size()];
+        int[] next = {0};
+        bank.forEach((id, account) -> ids[next[0]++] = id);
+        Arrays.sort(ids);
+        ColumnarBank columns = new ColumnarBank(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            columns.set(i, ids[i], bank.get(ids[i]));
+        }
+        return columns;
+    }
+
+    public static ColumnarBank of(Map<Long, Account> bank) {
+        return of(LongAccountMap.of(bank));
+    }
+
+    private void set(int row, long id, Account account) {
+        ids[row] = id;
+        currencies[row] = CompactBalance.NO_CURRENCY;
+        if (account == null) {
+            setBit(nullAccounts, row);
+            setBit(nullAccountIds, row);
+            setBit(nullBalances, row);
+            setBit(nullAmounts, row);
+            return;
+        }
+        if (account.getId() == null) {
+            setBit(nullAccountIds, row);
+        } else {
+            accountIds[row] = account.getId();
+        }
+        Balance balance = account.getBalance();
+        if (balance == null) {
+            setBit(nullBalances, row);
+            setBit(nullAmounts, row);
+            return;
+        }
+        currencies[row] = CompactBalance.toOrdinal(balance.getCurrency());
+        if (balance.getAmount() == null) {
+            setBit(nullAmounts, row);
+        } else {
+            amounts[row] = CompactBalance.toMinorUnits(balance.getAmount());
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long idAt(int row) {
+        return ids[row];
+    }
+
+    /**
+     * @return The row of `id`, or a negative number if `id` is not in the bank.
+     */
+    public int indexOf(long id) {
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    /**
+     * @return A new `Account` equal to the one in row `row` but for its amount, rounded to the minor unit, or `null`
+     * if the row holds a `null` account.
+     */
+    public Account accountAt(int row) {
+        if (isSet(nullAccounts, row)) {
+            return null;
+        }
+        Long accountId = isSet(nullAccountIds, row) ? null : accountIds[row];
+        if (isSet(nullBalances, row)) {
+            return new Account(accountId, null);
+        }
+        Double amount = isSet(nullAmounts, row) ? null : CompactBalance.toAmount(amounts[row]);
+        byte currency = currencies[row];
+        return new Account(accountId, new Balance(amount, currency == CompactBalance.NO_CURRENCY ? null : CURRENCIES[currency]));
+    }
+
+    /**
+     * @return A new bank with the accounts of `accountAt`, so amounts rounded to the minor unit.
+     */
+    public LongAccountMap toAccountMap() {
+        LongAccountMap bank = new LongAccountMap(size);
+        for (int row = 0; row < size; row++) {
+            bank.put(ids[row], accountAt(row));
+        }
+        return bank;
+    }
+
+    /**
+     * @return The rows holding a balance in `currency`, with an amount.
+     */
+    public long[] whereCurrency(Currency currency) {
+        byte ordinal = (byte) currency.ordinal();
+        long[] selection = new long[nullAccounts.length];
+        for (int row = 0; row < size; row++) {
+            if (currencies[row] == ordinal) {
+                setBit(selection, row);
+            }
+        }
+        return andNot(selection, nullAmounts);
+    }
+
+    /**
+     * @return The rows holding an amount between `minMinorUnits` and `maxMinorUnits`, inclusive, in any currency.
+     */
+    public long[] whereAmountBetween(long minMinorUnits, long maxMinorUnits) {
+        long[] selection = new long[nullAccounts.length];
+        for (int row = 0; row < size; row++) {
+            long amount = amounts[row];
+            if (amount >= minMinorUnits && amount <= maxMinorUnits) {
+                setBit(selection, row);
+            }
+        }
+        return andNot(selection, nullAmounts);
+    }
+
+    /**
+     * @return The rows holding a `null` balance in a non-`null` account.
+     */
+    public long[] whereNullBalance() {
+        return andNot(nullBalances, nullAccounts);
+    }
+
+    public long[] whereNullAccount() {
+        return nullAccounts.clone();
+    }
+
+    /**
+     * @return The rows holding a balance with a `null` amount.
+     */
+    public long[] whereNullAmount() {
+        return andNot(nullAmounts, nullBalances);
+    }
+
+    /**
+     * @return The rows selected by both `a` and `b`, in a new bitmap.
+     */
+    public static long[] and(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = a[i] & b[i];
+        }
+        return result;
+    }
+
+    public static long count(long[] selection) {
+        long count = 0;
+        for (long word : selection) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public long countNullBalances() {
+        return count(whereNullBalance());
+    }
+
+    /**
+     * @return The totals of the balances in the selected rows.
+     */
+    public CurrencyTotals totals(long[] selection) {
+        CurrencyTotals totals = new CurrencyTotals();
+        for (int word = 0; word < Math.min(selection.length, nullAmounts.length); word++) {
+            long bits = selection[word] & ~nullAmounts[word];
+            while (bits != 0) {
+                int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+                if (row >= size) {
+                    break;
+                }
+                if (currencies[row] != CompactBalance.NO_CURRENCY) {
+                    totals.add(currencies[row], amounts[row]);
+                }
+                bits &= bits - 1;
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * @return The totals of all balances; same as `BankValuation.sequential` on the original bank.
+     */
+    public CurrencyTotals totals() {
+        long[] sums = new long[CURRENCIES.length];
+        long[] counts = new long[CURRENCIES.length];
+        for (int row = 0; row < size; row++) {
+            int currency = currencies[row];
+            if (currency >= 0) {
+                sums[currency] = Math.addExact(sums[currency], amounts[row]);
+                counts[currency]++;
+            }
+        }
+        // Rows with a currency but a `null` amount added 0 to the sums, but must not be counted.
+        for (int word = 0; word < nullAmounts.length; word++) {
+            long bits = nullAmounts[word];
+            while (bits != 0) {
+                int currency = currencies[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                if (currency >= 0) {
+                    counts[currency]--;
+                }
+                bits &= bits - 1;
+            }
+        }
+        CurrencyTotals totals = new CurrencyTotals();
+        for (int currency = 0; currency < sums.length; currency++) {
+            totals.add(currency, sums[currency], counts[currency]);
+        }
+        return totals;
+    }
+
+    public double sumDollars(long[] selection) {
+        return totals(selection).totalDollars();
+    }
+
+    /**
+     * @return The total in dollars of the balances in `currency`.
+     */
+    public double sumDollars(Currency currency) {
+        byte ordinal = (byte) currency.ordinal();
+        long sum = 0;
+        for (int row = 0; row < size; row++) {
+            sum = Math.addExact(sum, currencies[row] == ordinal ? amounts[row] : 0);
+        }
+        return CompactBalance.toDollars(sum, ordinal);
+    }
+
+    private static long[] andNot(long[] a, long[] b) {
+        long[] result = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] & ~b[i];
+        }
+        return result;
+    }
+
+    private static void setBit(long[] bitmap, int row) {
+        bitmap[row >>> 6] |= 1L << row;
+    }
+
+    private static boolean isSet(long[] bitmap, int row) {
+        return (bitmap[row >>> 6] & (1L << row)) != 0;
+    }
+}
@@ -0,0 +1,144 @@
+package com.sitepoint.optional.example;
+
+import java.util.OptionalDouble;
+
+/**
+ * A compact, unboxed counterpart of `Balance`: the amount is held as fixed-point minor units (cents) in a `long`,
+ * and the currency as its ordinal in a `byte`.
+ *
+ * A missing amount (`new Balance(null, Currency.DOLLAR)`) is represented by the `NO_AMOUNT` sentinel instead of a
+ * boxed `null`, and a missing currency by `NO_CURRENCY`. Conversions never box: they either return an
+ * `OptionalDouble`, which is empty exactly when the `toDollars` functions in the examples would return
+ * `Optional.empty`, or a `double` that is `NaN` in the same cases.
+ *
+ * The static methods work on the primitive representation directly, so that bulk code can keep amounts and
+ * currencies in plain arrays and never instantiate this class.
+ */
+final class CompactBalance {
+
+    public static final long NO_AMOUNT = Long.MIN_VALUE;
+    public static final byte NO_CURRENCY = -1;
+    public static final int MINOR_UNITS_PER_UNIT = 100;
+
+    /**
+     * Bound on the absolute value of amounts: those whose minor units fit a `long` without clashing with `NO_AMOUNT`
+     * are strictly smaller. Exactly 2^63 minor units, since `Long.MAX_VALUE / 100` is not a `double` and would round
+     * up to a bound that lets `-2^63`, that is `NO_AMOUNT`, through.
+     */
+    public static final double MAX_AMOUNT = 0x1p63 / MINOR_UNITS_PER_UNIT;
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final long minorUnits;
+    private final byte currency;
+
+    public CompactBalance(long minorUnits, byte currency) {
+        if (currency != NO_CURRENCY && (currency < 0 || currency >= CURRENCIES.length)) {
+            throw new IllegalArgumentException("Invalid currency ordinal: " + currency);
+        }
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    public static CompactBalance of(Balance balance) {
+        return new CompactBalance(toMinorUnits(balance.getAmount()), toOrdinal(balance.getCurrency()));
+    }
+
+    public Balance toBalance() {
+        return new Balance(hasAmount() ? toAmount(minorUnits) : null, getCurrency());
+    }
+
+    public boolean hasAmount() {
+        return minorUnits != NO_AMOUNT;
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public byte getCurrencyOrdinal() {
+        return currency;
+    }
+
+    public Currency getCurrency() {
+        return currency == NO_CURRENCY ? null : CURRENCIES[currency];
+    }
+
+    public OptionalDouble toDollars() {
+        double dollars = toDollars(minorUnits, currency);
+        return Double.isNaN(dollars) ? OptionalDouble.empty() : OptionalDouble.of(dollars);
+    }
+
+    /**
+     * @return The value in dollars, or `NaN` if either the amount or the currency is missing.
+     */
+    public double toDollarsOrNaN() {
+        return toDollars(minorUnits, currency);
+    }
+
+    /**
+     * Primitive-only conversion to dollars.
+     *
+     * @return The value in dollars, or `NaN` if `minorUnits` is `NO_AMOUNT` or `currency` is `NO_CURRENCY`.
+     */
+    public static double toDollars(long minorUnits, int currency) {
+        if (minorUnits == NO_AMOUNT || currency == NO_CURRENCY) {
+            return Double.NaN;
+        }
+        return toAmount(minorUnits) * dollarRate(currency);
+    }
+
+    /**
+     * @return The multiplier converting an amount in the currency with ordinal `currency` into dollars, as currently
+     * set in `ExchangeRates.dollarRates()`.
+     */
+    public static double dollarRate(int currency) {
+        return ExchangeRates.dollarRates().rate(currency);
+    }
+
+    /**
+     * @return `NO_AMOUNT` for a `null` amount, the amount rounded to the nearest minor unit otherwise.
+     */
+    public static long toMinorUnits(Double amount) {
+        if (amount == null) {
+            return NO_AMOUNT;
+        }
+        // Checks the scaled amount, which may round up to 2^63 even for an amount just below `MAX_AMOUNT`; also
+        // rejects `NaN`
+        double minorUnits = amount * MINOR_UNITS_PER_UNIT;
+        if (!(Math.abs(minorUnits) < 0x1p63)) {
+            throw new IllegalArgumentException("Amount can't be represented in minor units: " + amount);
+        }
+        return Math.round(minorUnits);
+    }
+
+    public static double toAmount(long minorUnits) {
+        return (double) minorUnits / MINOR_UNITS_PER_UNIT;
+    }
+
+    public static byte toOrdinal(Currency currency) {
+        return currency == null ? NO_CURRENCY : (byte) currency.ordinal();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof CompactBalance)) {
+            return false;
+        }
+        CompactBalance that = (CompactBalance) other;
+        return minorUnits == that.minorUnits && currency == that.currency;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + currency;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactBalance[" + (hasAmount() ? toAmount(minorUnits) : "null") + " " + getCurrency() + "]";
+    }
+}
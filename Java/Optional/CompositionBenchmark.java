@@ -0,0 +1,178 @@
+package com.sitepoint.optional.example;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Measures each `CompositionStrategy`, in both its chained and composed form, over random banks of increasing size
+ * and with different ratios of ids found in the bank.
+ *
+ * For each combination it reports:
+ * - throughput, in million evaluations per second;
+ * - latency percentiles, per evaluation, of batches of `LATENCY_BATCH` consecutive evaluations, each timed with two
+ *   `System.nanoTime` calls, so that the timer costs well under a nanosecond per evaluation; a slow evaluation only
+ *   shows up in so far as it slows down its batch;
+ * - bytes allocated per evaluation, from the allocation counter of the benchmark thread;
+ * - how many evaluations threw an exception (for the composed forms that break associativity).
+ *
+ * Run with `java com.sitepoint.optional.example.CompositionBenchmark [sizes] [hitRatios] [rounds]`, where sizes and
+ * hit ratios are comma-separated lists, e.g. `1000,1000000 0.5,0.99 5`. Each strategy and form is measured in a
+ * fresh JVM, started with the same JVM options and class path, so that the profile the JIT collected for one
+ * doesn't affect how the next is compiled; use a fixed heap (`-Xms`/`-Xmx`) to make runs comparable. A single
+ * strategy and form can be measured in the current JVM with
+ * `java com.sitepoint.optional.example.CompositionBenchmark sizes hitRatios rounds strategy form`, e.g.
+ * `1000000 0.9 5 ATTEMPTED_SOLUTION COMPOSED`.
+ */
+public class CompositionBenchmark {
+
+    private static final int OPERATIONS = 1 << 20;
+    private static final int LATENCY_BATCH = 128;
+    private static final double NULL_ACCOUNT_RATIO = 0.05;
+    private static final double NULL_BALANCE_RATIO = 0.05;
+    private static final double EMPTY_ID_RATIO = 0.01;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static Object sink;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String sizes = args.length > 0 ? args[0] : "1000,100000,1000000";
+        String hitRatios = args.length > 1 ? args[1] : "0.5,0.9,1";
+        String rounds = args.length > 2 ? args[2] : "5";
+
+        if (args.length > 4) {
+            measure(CompositionStrategy.valueOf(args[3]), Form.valueOf(args[4]), parseInts(sizes),
+                    parseDoubles(hitRatios), Integer.parseInt(rounds));
+            return;
+        }
+
+        System.out.printf("%-42s %-8s %9s %5s %10s %8s %8s %8s %8s %10s %8s%n", "strategy", "form", "size", "hits",
+                "Mops/s", "p50 ns", "p90 ns", "p99 ns", "p99.9 ns", "B/op", "throws");
+        for (CompositionStrategy strategy : CompositionStrategy.values()) {
+            for (Form form : Form.values()) {
+                List<String> command = new ArrayList<>();
+                command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+                command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+                command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+                        CompositionBenchmark.class.getName(), sizes, hitRatios, rounds, strategy.name(), form.name()));
+                int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+                if (exitCode != 0) {
+                    System.err.println("Measuring " + strategy + " " + form + " failed with exit code " + exitCode);
+                    System.exit(exitCode);
+                }
+            }
+        }
+    }
+
+    enum Form {
+        CHAINED, COMPOSED
+    }
+
+    private static void measure(CompositionStrategy strategy, Form form, int[] sizes, double[] hitRatios, int rounds) {
+        for (int size : sizes) {
+            Random random = new Random(size);
+            Map<Long, Account> bank = RandomBank.generate(random, size, NULL_ACCOUNT_RATIO, NULL_BALANCE_RATIO);
+            CompositionStrategy.Evaluator evaluator = strategy.bind(bank);
+            for (double hitRatio : hitRatios) {
+                Optional<Long>[] ids = RandomBank.optionalIds(random,
+                        RandomBank.ids(random, OPERATIONS, size, hitRatio), EMPTY_ID_RATIO);
+                Result result = measure(evaluator, form, ids, rounds);
+                System.out.printf("%-42s %-8s %9d %5.2f %10.2f %8.1f %8.1f %8.1f %8.1f %10.1f %8d%n",
+                        strategy, form, size, hitRatio, result.opsPerSecond / 1e6,
+                        result.percentile(0.5), result.percentile(0.9), result.percentile(0.99),
+                        result.percentile(0.999), result.bytesPerOp, result.exceptions);
+            }
+        }
+    }
+
+    private static Result measure(CompositionStrategy.Evaluator evaluator, Form form, Optional<Long>[] ids, int rounds) {
+        // Warm-up: at least as many evaluations as a measured round, so that the JIT has compiled the strategy.
+        run(evaluator, form, ids);
+
+        long bestNanos = Long.MAX_VALUE;
+        long bytes = 0;
+        long exceptions = 0;
+        for (int round = 0; round < rounds; round++) {
+            long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            exceptions = run(evaluator, form, ids);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            bytes += THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        }
+
+        long[] latencies = new long[ids.length / LATENCY_BATCH];
+        for (int batch = 0; batch < latencies.length; batch++) {
+            long start = System.nanoTime();
+            for (int i = batch * LATENCY_BATCH; i < (batch + 1) * LATENCY_BATCH; i++) {
+                evaluate(evaluator, form, ids[i]);
+            }
+            latencies[batch] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+
+        return new Result(ids.length * 1e9 / bestNanos, (double) bytes / ((long) rounds * ids.length),
+                latencies, exceptions);
+    }
+
+    private static long run(CompositionStrategy.Evaluator evaluator, Form form, Optional<Long>[] ids) {
+        long exceptions = 0;
+        for (Optional<Long> id : ids) {
+            if (!evaluate(evaluator, form, id)) {
+                exceptions++;
+            }
+        }
+        return exceptions;
+    }
+
+    /**
+     * @return `false` if the evaluation threw an exception.
+     */
+    private static boolean evaluate(CompositionStrategy.Evaluator evaluator, Form form, Optional<Long> id) {
+        try {
+            sink = form == Form.CHAINED ? evaluator.chained(id) : evaluator.composed(id);
+            return true;
+        } catch (RuntimeException e) {
+            sink = e;
+            return false;
+        }
+    }
+
+    private static final class Result {
+        final double opsPerSecond;
+        final double bytesPerOp;
+        // Nanoseconds per batch of `LATENCY_BATCH` evaluations
+        final long[] sortedLatencies;
+        final long exceptions;
+
+        Result(double opsPerSecond, double bytesPerOp, long[] sortedLatencies, long exceptions) {
+            this.opsPerSecond = opsPerSecond;
+            this.bytesPerOp = bytesPerOp;
+            this.sortedLatencies = sortedLatencies;
+            this.exceptions = exceptions;
+        }
+
+        /**
+         * @return The `p` percentile of the batch latencies, per evaluation.
+         */
+        double percentile(double p) {
+            return (double) sortedLatencies[(int) Math.min(sortedLatencies.length - 1,
+                    (long) (p * sortedLatencies.length))] / LATENCY_BATCH;
+        }
+    }
+
+    private static int[] parseInts(String list) {
+        return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static double[] parseDoubles(String list) {
+        return Arrays.stream(list.split(",")).mapToDouble(Double::parseDouble).toArray();
+    }
+}
@@ -0,0 +1,269 @@
+package com.sitepoint.optional.example;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * The ways of composing `findAccount`, `extractBalance` and `toDollars` shown in `Test`, packaged so that they can be
+ * run against an arbitrary bank (see `CompositionBenchmark`).
+ *
+ * Each strategy binds its functions to a bank and exposes two ways of evaluating an account id: `chained`, mapping the
+ * functions one at a time over the `Optional` id, and `composed`, composing the functions first and mapping the
+ * result once; `applied` also applies the composed function to a bare id, to check left identity (see
+ * `MonadLawChecker`). The functions are the same as in the corresponding method of `Test`; for strategies with several
+ * composed variants, the one used is documented on the constant.
+ * Note that some `composed` evaluations throw `NullPointerException`, exactly as in the examples.
+ */
+enum CompositionStrategy {
+
+    /**
+     * `Test.misbehaving()`.
+     */
+    MISBEHAVING {
+        @Override
+        public Evaluator bind(Map<Long, Account> bank) {
+            Function<Long, Account> findAccount = id -> bank.get(id);
+            Function<Account, Balance> extractBalance = account -> account != null ? account.getBalance() : new Balance(0., Currency.DOLLAR);
+            Function<Balance, Double> toDollars = balance -> {
+                if (balance == null) {
+                    return 0.;
+                }
+                switch (balance.getCurrency()) {
+                    case DOLLAR: return balance.getAmount();
+                    case POUND: return balance.getAmount() * RATES.rate(Currency.POUND);
+                    case EURO: return balance.getAmount() * RATES.rate(Currency.EURO);
+                    default: return 0.;
+                }
+            };
+            Function<Long, Double> composed = id -> toDollars.apply(extractBalance.apply(findAccount.apply(id)));
+            return new Evaluator(
+                    accountId -> accountId.map(findAccount).map(extractBalance).map(toDollars),
+                    accountId -> accountId.map(composed),
+                    id -> Optional.ofNullable(composed.apply(id)));
+        }
+    },
+
+    /**
+     * `Test.attemptedSolution()`.
+     */
+    ATTEMPTED_SOLUTION {
+        @Override
+        public Evaluator bind(Map<Long, Account> bank) {
+            Function<Long, Optional<Account>> findAccountOpt = id -> Optional.ofNullable(bank.get(id));
+            Function<Optional<Account>, Optional<Balance>> extractBalanceOpt = accountOpt -> {
+                Optional<Balance> balanceOpt = accountOpt.map(Account::getBalance);
+                return balanceOpt.isPresent()
+                        ? balanceOpt
+                        : Optional.of(new Balance(0., Currency.DOLLAR));
+            };
+            Function<Balance, Double> toDollars = balance -> {
+                switch (balance.getCurrency()) {
+                    case DOLLAR:
+                        return balance.getAmount();
+                    case POUND:
+                        return balance.getAmount() * RATES.rate(Currency.POUND);
+                    case EURO:
+                        return balance.getAmount() * RATES.rate(Currency.EURO);
+                    default:
+                        return 0.;
+                }
+            };
+            Function<Optional<Balance>, Optional<Double>> toDollarsOpt = balanceOpt -> {
+                Optional<Double> dollarsOpt = balanceOpt.map(toDollars);
+                return dollarsOpt.isPresent()
+                        ? dollarsOpt
+                        : Optional.of(0.);
+            };
+            Function<Long, Optional<Double>> composed = findAccountOpt.andThen(extractBalanceOpt).andThen(toDollarsOpt);
+            return new Evaluator(
+                    accountId -> accountId.map(findAccountOpt).map(extractBalanceOpt).flatMap(toDollarsOpt),
+                    accountId -> accountId.flatMap(composed),
+                    composed);
+        }
+    },
+
+    /**
+     * `Test.alternativeSolutionNoOptional()`.
+     */
+    ALTERNATIVE_SOLUTION_NO_OPTIONAL {
+        @Override
+        public Evaluator bind(Map<Long, Account> bank) {
+            Function<Long, Account> findAccount = id -> bank.get(id);
+            Function<Account, Balance> extractBalance = account -> account.getBalance();
+            Function<Balance, Double> toDollars = balance -> {
+                switch (balance.getCurrency()) {
+                    case DOLLAR:
+                        return balance.getAmount();
+                    case POUND:
+                        return balance.getAmount() * RATES.rate(Currency.POUND);
+                    case EURO:
+                        return balance.getAmount() * RATES.rate(Currency.EURO);
+                    default:
+                        return 0.;
+                }
+            };
+            Function<Long, Double> composed = findAccount.andThen(extractBalance).andThen(toDollars);
+            return new Evaluator(
+                    accountId -> accountId.map(findAccount).map(extractBalance).map(toDollars),
+                    accountId -> accountId.map(composed),
+                    id -> Optional.ofNullable(composed.apply(id)));
+        }
+    },
+
+    /**
+     * `Test.alternativeNonSolutionNoOptional()`.
+     */
+    ALTERNATIVE_NON_SOLUTION_NO_OPTIONAL {
+        @Override
+        public Evaluator bind(Map<Long, Account> bank) {
+            Function<Long, Account> findAccount = id -> bank.get(id);
+            Function<Account, Balance> extractBalance = account -> account == null ? null : account.getBalance();
+            Function<Balance, Double> toDollars = balance -> {
+                if (balance == null) {
+                    return null;
+                } else {
+                    switch (balance.getCurrency()) {
+                        case DOLLAR:
+                            return balance.getAmount();
+                        case POUND:
+                            return balance.getAmount() * RATES.rate(Currency.POUND);
+                        case EURO:
+                            return balance.getAmount() * RATES.rate(Currency.EURO);
+                        default:
+                            return 0.;
+                    }
+                }
+            };
+            Function<Long, Double> composed = findAccount.andThen(extractBalance).andThen(toDollars);
+            return new Evaluator(
+                    accountId -> accountId.map(findAccount).map(extractBalance).map(toDollars),
+                    accountId -> accountId.map(composed),
+                    id -> Optional.ofNullable(composed.apply(id)));
+        }
+    },
+
+    /**
+     * `Test.alternativeSolutionOptionalOutputOnly()`, composing with `orElse` and a `new Balance(0., Currency.DOLLAR)`
+     * default: the last, and least obviously broken, of the variants in the example.
+     */
+    ALTERNATIVE_SOLUTION_OPTIONAL_OUTPUT_ONLY {
+        @Override
+        public Evaluator bind(Map<Long, Account> bank) {
+            Function<Long, Optional<Account>> findAccount = id -> Optional.ofNullable(bank.get(id));
+            Function<Account, Optional<Balance>> extractBalance = account -> Optional.ofNullable(account.getBalance());
+            Function<Balance, Optional<Double>> toDollars = OPTIONAL_OUTPUT_TO_DOLLARS;
+            Function<Long, Optional<Double>> composed = findAccount
+                    .andThen(x -> x.orElse(new Account(0L, null)))
+                    .andThen(extractBalance)
+                    .andThen(x -> x.orElse(new Balance(0., Currency.DOLLAR)))
+                    .andThen(toDollars);
+            return new Evaluator(
+                    accountId -> accountId.flatMap(findAccount).flatMap(extractBalance).flatMap(toDollars),
+                    accountId -> accountId.flatMap(composed),
+                    composed);
+        }
+    },
+
+    /**
+     * `Test.attemptedSolutionOptionalOutputOnly()`.
+     */
+    ATTEMPTED_SOLUTION_OPTIONAL_OUTPUT_ONLY {
+        @Override
+        public Evaluator bind(Map<Long, Account> bank) {
+            Function<Long, Optional<Account>> findAccount = id -> Optional.ofNullable(bank.get(id));
+            Function<Account, Optional<Balance>> extractBalance = account -> Optional.ofNullable(account.getBalance());
+            Function<Balance, Optional<Double>> toDollars = OPTIONAL_OUTPUT_TO_DOLLARS;
+            Function<Long, Optional<Double>> composed = id ->
+                    findAccount.apply(id).flatMap(account -> extractBalance.apply(account)).flatMap(toDollars);
+            return new Evaluator(
+                    accountId -> accountId.flatMap(findAccount).flatMap(extractBalance).flatMap(toDollars),
+                    accountId -> accountId.flatMap(composed),
+                    composed);
+        }
+    },
+
+    /**
+     * `Test.alternativeSolutionOptionalInputOnly()`.
+     */
+    ALTERNATIVE_SOLUTION_OPTIONAL_INPUT_ONLY {
+        @Override
+        public Evaluator bind(Map<Long, Account> bank) {
+            Function<Long, Account> findAccount = id -> bank.get(id);
+            Function<Optional<Account>, Balance> extractBalance = accountOpt -> {
+                Optional<Balance> balanceOpt = accountOpt.map(Account::getBalance);
+                return balanceOpt.orElse(new Balance(0., Currency.DOLLAR));
+            };
+            Function<Balance, Double> toDollars = balance -> {
+                switch (balance.getCurrency()) {
+                    case DOLLAR:
+                        return balance.getAmount();
+                    case POUND:
+                        return balance.getAmount() * RATES.rate(Currency.POUND);
+                    case EURO:
+                        return balance.getAmount() * RATES.rate(Currency.EURO);
+                    default:
+                        return 0.;
+                }
+            };
+            Function<Optional<Balance>, Double> toDollarsOpt = balanceOpt -> balanceOpt.map(toDollars).orElse(0.);
+            Function<Long, Double> composed = findAccount.andThen(Optional::ofNullable).andThen(extractBalance)
+                    .andThen(Optional::ofNullable).andThen(toDollarsOpt);
+            return new Evaluator(
+                    accountId -> accountId.map(findAccount).map(Optional::ofNullable).map(extractBalance)
+                            .map(Optional::ofNullable).map(toDollarsOpt),
+                    accountId -> accountId.map(composed),
+                    id -> Optional.ofNullable(composed.apply(id)));
+        }
+    };
+
+    private static final ExchangeRates RATES = ExchangeRates.dollarRates();
+
+    private static final Function<Balance, Optional<Double>> OPTIONAL_OUTPUT_TO_DOLLARS = balance -> {
+        switch (balance.getCurrency()) {
+            case DOLLAR:
+                return Optional.ofNullable(balance.getAmount());
+            case POUND:
+                return Optional.ofNullable(balance.getAmount() * RATES.rate(Currency.POUND));
+            case EURO:
+                return Optional.ofNullable(balance.getAmount() * RATES.rate(Currency.EURO));
+            default:
+                return Optional.ofNullable(0.);
+        }
+    };
+
+    /**
+     * @return The strategy's functions, bound to `bank`.
+     */
+    public abstract Evaluator bind(Map<Long, Account> bank);
+
+    static final class Evaluator {
+        private final Function<Optional<Long>, Optional<Double>> chained;
+        private final Function<Optional<Long>, Optional<Double>> composed;
+        private final Function<Long, Optional<Double>> applied;
+
+        Evaluator(Function<Optional<Long>, Optional<Double>> chained,
+                  Function<Optional<Long>, Optional<Double>> composed,
+                  Function<Long, Optional<Double>> applied) {
+            this.chained = chained;
+            this.composed = composed;
+            this.applied = applied;
+        }
+
+        public Optional<Double> chained(Optional<Long> accountId) {
+            return chained.apply(accountId);
+        }
+
+        public Optional<Double> composed(Optional<Long> accountId) {
+            return composed.apply(accountId);
+        }
+
+        /**
+         * Applies the composed function directly to a bare, possibly `null`, id, and wraps its result as `composed`
+         * does: the right-hand side of the left identity law, `Optional.ofNullable(id).flatMap(f) == f(id)`.
+         */
+        public Optional<Double> applied(Long id) {
+            return applied.apply(id);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.sitepoint.optional.example;
+
+enum Currency {
+    DOLLAR, POUND, EURO
+}
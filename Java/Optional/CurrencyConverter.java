@@ -0,0 +1,132 @@
+package com.sitepoint.optional.example;
+
+/**
+ * Converts amounts between any two currencies, through a precomputed matrix of cross rates.
+ *
+ * The matrix is derived from a table of dollar rates (see `ExchangeRates`): the rate from `a` to `b` is the dollar
+ * rate of `a` divided by the dollar rate of `b`. It covers every constant of `Currency`, so adding a currency only
+ * takes a new constant and its dollar rate, and no code switches on the currency: each conversion is a single
+ * multiplication by a matrix element.
+ *
+ * `ExchangeRates` accepts a rate of `0` for a currency that has no value: converting from it gives `0`, and
+ * converting to it gives `NaN`, as there is no amount of it worth anything. Currency ordinals outside of `Currency`,
+ * in particular `CompactBalance.NO_CURRENCY`, also convert to `NaN`.
+ *
+ * A converter is immutable, and reflects the rates it was built from; `current()` returns a converter for the rates
+ * currently in `ExchangeRates.dollarRates()`, rebuilding it only when the table is swapped.
+ */
+final class CurrencyConverter {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private static volatile CurrencyConverter current;
+
+    private final double[] source;
+    private final int size;
+    private final double[] crossRates;
+
+    private CurrencyConverter(double[] dollarRates) {
+        size = dollarRates.length;
+        source = dollarRates;
+        // Same validation as `ExchangeRates`, so that any table it accepts can be converted
+        for (int i = 0; i < size; i++) {
+            if (!(dollarRates[i] >= 0.) || Double.isInfinite(dollarRates[i])) {
+                throw new IllegalArgumentException("Invalid rate of " + CURRENCIES[i] + ": " + dollarRates[i]);
+            }
+        }
+        crossRates = new double[size * size];
+        for (int from = 0; from < size; from++) {
+            for (int to = 0; to < size; to++) {
+                double rate;
+                if (from == to) {
+                    rate = 1.;
+                } else if (dollarRates[to] == 0.) {
+                    rate = Double.NaN;
+                } else {
+                    rate = dollarRates[from] / dollarRates[to];
+                }
+                crossRates[from * size + to] = rate;
+            }
+        }
+    }
+
+    public static CurrencyConverter of(ExchangeRates rates) {
+        return new CurrencyConverter(rates.table());
+    }
+
+    /**
+     * @return A converter for the rates currently in `ExchangeRates.dollarRates()`.
+     */
+    public static CurrencyConverter current() {
+        double[] table = ExchangeRates.dollarRates().table();
+        CurrencyConverter converter = current;
+        if (converter == null || converter.source != table) {
+            converter = new CurrencyConverter(table);
+            current = converter;
+        }
+        return converter;
+    }
+
+    public double rate(Currency from, Currency to) {
+        return crossRates[from.ordinal() * size + to.ordinal()];
+    }
+
+    public double convert(double amount, Currency from, Currency to) {
+        return amount * crossRates[from.ordinal() * size + to.ordinal()];
+    }
+
+    /**
+     * Converts `amount` between the currencies with ordinals `from` and `to`.
+     *
+     * @return `NaN` if either ordinal is not one of `Currency`.
+     */
+    public double convert(double amount, int from, int to) {
+        if (!isCurrency(from) || !isCurrency(to)) {
+            return Double.NaN;
+        }
+        return amount * crossRates[from * size + to];
+    }
+
+    /**
+     * Converts each `amounts[i]` from the currency with ordinal `from[i]` to the one with ordinal `to[i]`, or to
+     * `NaN` if either ordinal is not one of `Currency`.
+     */
+    public void convert(double[] amounts, byte[] from, byte[] to, double[] out) {
+        int n = amounts.length;
+        if (from.length < n || to.length < n || out.length < n) {
+            throw new IllegalArgumentException("Arrays shorter than " + n);
+        }
+        double[] crossRates = this.crossRates;
+        int size = this.size;
+        for (int i = 0; i < n; i++) {
+            int f = from[i];
+            int t = to[i];
+            // One unsigned comparison per code also rejects the negative ones
+            out[i] = Integer.compareUnsigned(f, size) < 0 && Integer.compareUnsigned(t, size) < 0
+                    ? amounts[i] * crossRates[f * size + t] : Double.NaN;
+        }
+    }
+
+    /**
+     * Converts each `amounts[i]` from the currency with ordinal `from[i]` to `to`, or to `NaN` if `from[i]` is not
+     * one of `Currency`.
+     */
+    public void convert(double[] amounts, byte[] from, Currency to, double[] out) {
+        int n = amounts.length;
+        if (from.length < n || out.length < n) {
+            throw new IllegalArgumentException("Arrays shorter than " + n);
+        }
+        double[] column = new double[size];
+        for (int i = 0; i < size; i++) {
+            column[i] = crossRates[i * size + to.ordinal()];
+        }
+        for (int i = 0; i < n; i++) {
+            int f = from[i];
+            out[i] = Integer.compareUnsigned(f, size) < 0 ? amounts[i] * column[f] : Double.NaN;
+        }
+    }
+
+    private boolean isCurrency(int ordinal) {
+        return ordinal >= 0 && ordinal < size;
+    }
+}
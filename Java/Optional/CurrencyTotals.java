@@ -0,0 +1,141 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+
+/**
+ * Running totals of balances, broken down by source currency.
+ *
+ * Amounts are accumulated as fixed-point minor units (see `CompactBalance`) in a `long` per currency, and only
+ * converted to dollars when read. Integer addition is associative, so totals computed in different orders (for
+ * instance by merging per-thread partial totals) are always exactly the same.
+ *
+ * Balances that the `flatMap` chain in `attemptedSolutionOptionalOutputOnly` would turn into `Optional.empty`
+ * (`null` account, `null` balance, `null` amount) are not counted.
+ *
+ * This class is not thread-safe: each thread should accumulate into its own instance and `merge` them at the end.
+ */
+final class CurrencyTotals {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final long[] minorUnits = new long[CURRENCIES.length];
+    private final long[] counts = new long[CURRENCIES.length];
+
+    /**
+     * @return `true` if `account` has a value in dollars, and so it was added to the totals.
+     */
+    public boolean add(Account account) {
+        return account != null && add(account.getBalance());
+    }
+
+    /**
+     * @return `true` if `balance` has a value in dollars, and so it was added to the totals.
+     */
+    public boolean add(Balance balance) {
+        if (balance == null || balance.getAmount() == null || balance.getCurrency() == null) {
+            return false;
+        }
+        add(balance.getCurrency().ordinal(), CompactBalance.toMinorUnits(balance.getAmount()));
+        return true;
+    }
+
+    /**
+     * @return `true` if `balance` has a value in dollars, and so it was removed from the totals.
+     */
+    public boolean remove(Balance balance) {
+        if (balance == null || balance.getAmount() == null || balance.getCurrency() == null) {
+            return false;
+        }
+        remove(balance.getCurrency().ordinal(), CompactBalance.toMinorUnits(balance.getAmount()));
+        return true;
+    }
+
+    public void add(int currency, long amountMinorUnits) {
+        minorUnits[currency] = Math.addExact(minorUnits[currency], amountMinorUnits);
+        counts[currency]++;
+    }
+
+    /**
+     * Adds the sum of `count` balances in the currency with ordinal `currency`.
+     */
+    public void add(int currency, long amountMinorUnits, long count) {
+        minorUnits[currency] = Math.addExact(minorUnits[currency], amountMinorUnits);
+        counts[currency] += count;
+    }
+
+    public void remove(int currency, long amountMinorUnits) {
+        minorUnits[currency] = Math.subtractExact(minorUnits[currency], amountMinorUnits);
+        counts[currency]--;
+    }
+
+    /**
+     * Sets the total and the count of the currency with ordinal `currency`, e.g. to publish totals computed ahead.
+     */
+    void set(int currency, long amountMinorUnits, long count) {
+        minorUnits[currency] = amountMinorUnits;
+        counts[currency] = count;
+    }
+
+    public CurrencyTotals merge(CurrencyTotals other) {
+        for (int i = 0; i < minorUnits.length; i++) {
+            minorUnits[i] = Math.addExact(minorUnits[i], other.minorUnits[i]);
+            counts[i] += other.counts[i];
+        }
+        return this;
+    }
+
+    /**
+     * @return The total amount held in `currency`, in minor units of that currency.
+     */
+    public long minorUnits(Currency currency) {
+        return minorUnits[currency.ordinal()];
+    }
+
+    /**
+     * @return The number of balances in `currency` that contributed to the totals.
+     */
+    public long count(Currency currency) {
+        return counts[currency.ordinal()];
+    }
+
+    /**
+     * @return The total held in `currency`, converted into dollars.
+     */
+    public double dollars(Currency currency) {
+        return CompactBalance.toDollars(minorUnits[currency.ordinal()], currency.ordinal());
+    }
+
+    public double totalDollars() {
+        double total = 0.;
+        for (Currency currency : CURRENCIES) {
+            total += dollars(currency);
+        }
+        return total;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof CurrencyTotals)) {
+            return false;
+        }
+        CurrencyTotals that = (CurrencyTotals) other;
+        return Arrays.equals(minorUnits, that.minorUnits) && Arrays.equals(counts, that.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(minorUnits) + Arrays.hashCode(counts);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CurrencyTotals[");
+        for (Currency currency : CURRENCIES) {
+            sb.append(currency).append('=').append(dollars(currency)).append(", ");
+        }
+        return sb.append("total=").append(totalDollars()).append(']').toString();
+    }
+}
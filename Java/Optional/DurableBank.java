@@ -0,0 +1,549 @@
+package com.sitepoint.optional.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * An in-memory bank whose every change is first appended to a write-ahead log, so that it can be rebuilt after a
+ * crash.
+ *
+ * Log records are length-prefixed and checksummed: a length and a CRC32C of the payload, followed by a payload of a
+ * record type, the id, and for `PUT` records the new account in the format of `AccountCodec` (so `null` accounts,
+ * balances and amounts are all kept). Every record holds the whole new state of an account, so replaying a record
+ * twice has no effect: this is what makes checkpoints safe at any point.
+ *
+ * `put`, `setBalance` and `remove` return once their record is on disk. Concurrent writers share `fsync`s (group
+ * commit): the first writer to wait becomes the leader and syncs everything written so far, while the others wait
+ * for it; the next leader then syncs all the records appended in the meantime, in one call.
+ *
+ * The log is split in segments, `wal-<generation>.log`. Once the current segment exceeds `checkpointBytes`, a new
+ * segment is started and the whole bank is written to `checkpoint-<generation>.ldg`, in the format of
+ * `MappedLedger`, after which older segments and checkpoints are deleted. So replay never reads more than about
+ * `checkpointBytes` of log. Writers are blocked while the checkpoint is written. A change is durable before the
+ * checkpoint it triggers starts, so a failed automatic checkpoint does not fail the change: it is logged and counted
+ * in `checkpointFailureCount`, and the older segments are kept until a later checkpoint succeeds.
+ *
+ * `open` recovers the bank from the latest checkpoint and the segments after it. Replay stops at the first record
+ * that is incomplete or fails its checksum, as left by a crash in the middle of a write; the log is truncated there,
+ * so the bank always recovers a prefix of the changes, and at least all those whose calls returned. Checkpoints are
+ * written to a temporary file and renamed, so a crash never leaves a partial one: an unreadable latest checkpoint
+ * is corruption, and `open` fails rather than recover from older files, whose log segments may already be deleted.
+ *
+ * Accounts are stored as values: `get` returns a copy, and changes must go through this class.
+ */
+final class DurableBank implements Closeable {
+
+    static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+
+    private static final Logger LOGGER = Logger.getLogger(DurableBank.class.getName());
+
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int MAX_PAYLOAD_SIZE = 64;
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".ldg";
+
+    private final Path directory;
+    private final long checkpointBytes;
+
+    // Guarded by `this`.
+    private final LongAccountMap bank;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + MAX_PAYLOAD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32C checksum = new CRC32C();
+    private long generation;
+    private long segmentBytes;
+    private boolean closed;
+
+    // Written under `this`, read by the group commit leader without it.
+    private volatile FileChannel log;
+    private volatile long written;
+
+    // Group commit state, guarded by `syncMonitor`.
+    private final Object syncMonitor = new Object();
+    private boolean syncing;
+    private long durable;
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder checkpointFailures = new LongAdder();
+
+    private DurableBank(Path directory, long checkpointBytes, LongAccountMap bank, long generation) throws IOException {
+        this.directory = directory;
+        this.checkpointBytes = checkpointBytes;
+        this.bank = bank;
+        this.generation = generation;
+        this.log = openSegment(generation);
+    }
+
+    public static DurableBank open(Path directory) throws IOException {
+        return open(directory, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * Opens the bank stored in `directory`, creating it if needed, and recovers its state.
+     */
+    public static DurableBank open(Path directory, long checkpointBytes) throws IOException {
+        if (checkpointBytes <= 0) {
+            throw new IllegalArgumentException("Checkpoint size must be positive: " + checkpointBytes);
+        }
+        Files.createDirectories(directory);
+
+        List<Long> checkpoints = generations(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX);
+        LongAccountMap bank;
+        long firstGeneration = 0;
+        if (checkpoints.isEmpty()) {
+            bank = new LongAccountMap(16);
+        } else {
+            firstGeneration = checkpoints.get(checkpoints.size() - 1);
+            Path checkpoint = checkpointPath(directory, firstGeneration);
+            try (MappedLedger ledger = MappedLedger.open(checkpoint)) {
+                bank = ledger.toAccountMap();
+            } catch (IOException | RuntimeException e) {
+                throw new IOException("Corrupt checkpoint: " + checkpoint, e);
+            }
+        }
+
+        List<Long> logs = generations(directory, LOG_PREFIX, LOG_SUFFIX);
+        long lastGeneration = firstGeneration - 1;
+        boolean torn = false;
+        for (long logGeneration : logs) {
+            lastGeneration = Math.max(lastGeneration, logGeneration);
+            if (logGeneration < firstGeneration) {
+                continue;
+            }
+            Path file = logPath(directory, logGeneration);
+            if (torn) {
+                // Records after a torn one were never acknowledged as a prefix: drop them.
+                Files.delete(file);
+                continue;
+            }
+            long valid = replay(file, bank);
+            if (valid < Files.size(file)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                    channel.force(true);
+                }
+                torn = true;
+            }
+        }
+        return new DurableBank(directory, checkpointBytes, bank, lastGeneration + 1);
+    }
+
+    public synchronized Account get(long id) {
+        return copy(bank.get(id));
+    }
+
+    public synchronized boolean containsKey(long id) {
+        return bank.containsKey(id);
+    }
+
+    public synchronized int size() {
+        return bank.size();
+    }
+
+    /**
+     * Equivalent of the `findAccount` function in the examples.
+     */
+    public Function<Long, Optional<Account>> finder() {
+        return id -> id == null ? Optional.empty() : Optional.ofNullable(get(id));
+    }
+
+    /**
+     * Associates a copy of `account` to `id`, returning once the change is durable.
+     */
+    public void put(long id, Account account) throws IOException {
+        long position;
+        synchronized (this) {
+            checkOpen();
+            Account stored = copy(account);
+            position = append(PUT, id, stored);
+            bank.put(id, stored);
+        }
+        awaitDurable(position);
+        checkpointIfNeeded();
+    }
+
+    /**
+     * Replaces the balance of the account associated to `id` with `balance`, which may be `null`, returning once
+     * the change is durable.
+     *
+     * @throws IllegalStateException If `id` is not associated to an account.
+     */
+    public void setBalance(long id, Balance balance) throws IOException {
+        long position;
+        synchronized (this) {
+            checkOpen();
+            Account account = bank.get(id);
+            if (account == null) {
+                throw new IllegalStateException("No account for id " + id);
+            }
+            Account updated = new Account(account.getId(), balance);
+            position = append(PUT, id, updated);
+            bank.put(id, updated);
+        }
+        awaitDurable(position);
+        checkpointIfNeeded();
+    }
+
+    /**
+     * Removes `id`, returning once the change is durable.
+     *
+     * @return `false` if `id` was not in the bank, in which case nothing is logged.
+     */
+    public boolean remove(long id) throws IOException {
+        long position;
+        synchronized (this) {
+            checkOpen();
+            if (!bank.containsKey(id)) {
+                return false;
+            }
+            position = append(REMOVE, id, null);
+            bank.remove(id);
+        }
+        awaitDurable(position);
+        checkpointIfNeeded();
+        return true;
+    }
+
+    /**
+     * Starts a new log segment, writes the whole bank to a checkpoint, and deletes the older segments and
+     * checkpoints.
+     */
+    public synchronized void checkpoint() throws IOException {
+        checkOpen();
+        rotate(true);
+        MappedLedger.write(checkpointPath(directory, generation), bank);
+        syncDirectory();
+        for (long old : generations(directory, LOG_PREFIX, LOG_SUFFIX)) {
+            if (old < generation) {
+                Files.deleteIfExists(logPath(directory, old));
+            }
+        }
+        for (long old : generations(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX)) {
+            if (old < generation) {
+                Files.deleteIfExists(checkpointPath(directory, old));
+            }
+        }
+    }
+
+    /**
+     * Syncs and closes the log, once the group commit leader, if any, is done with it. Changes still waiting for a
+     * sync are made durable by the final one.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        boolean interrupted = false;
+        synchronized (syncMonitor) {
+            while (syncing) {
+                try {
+                    syncMonitor.wait();
+                } catch (InterruptedException e) {
+                    // The channel must not be closed under the leader: keep waiting, and restore the flag after.
+                    interrupted = true;
+                }
+            }
+            syncing = true;
+        }
+        boolean synced = false;
+        try {
+            if (log.isOpen()) {
+                log.force(false);
+                synced = true;
+            }
+        } finally {
+            try {
+                log.close();
+            } finally {
+                synchronized (syncMonitor) {
+                    if (synced) {
+                        durable = written;
+                    }
+                    syncing = false;
+                    syncMonitor.notifyAll();
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * @return The segment records are currently appended to.
+     */
+    synchronized Path currentLog() {
+        return logPath(directory, generation);
+    }
+
+    public long appendCount() {
+        return appends.sum();
+    }
+
+    public long syncCount() {
+        return syncs.sum();
+    }
+
+    /**
+     * @return The number of automatic checkpoints that failed.
+     */
+    public long checkpointFailureCount() {
+        return checkpointFailures.sum();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Bank closed: " + directory);
+        }
+    }
+
+    /**
+     * Checkpoints if the current segment is full. Called once the change is durable, so a failure is logged rather
+     * than thrown: the log still holds everything, and the next full segment tries again.
+     */
+    private void checkpointIfNeeded() {
+        synchronized (this) {
+            if (segmentBytes < checkpointBytes || closed) {
+                return;
+            }
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                checkpointFailures.increment();
+                LOGGER.log(Level.WARNING, "Checkpoint of " + directory + " failed, keeping the log", e);
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the current segment.
+     *
+     * @return The log position at the end of the record.
+     */
+    private long append(byte type, long id, Account account) throws IOException {
+        record.clear();
+        record.position(RECORD_HEADER_SIZE);
+        record.put(type).putLong(id);
+        if (type == PUT) {
+            AccountCodec.write(record, account);
+        }
+        int length = record.position() - RECORD_HEADER_SIZE;
+        checksum.reset();
+        checksum.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length).putInt(4, (int) checksum.getValue());
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                log.write(record);
+            }
+        } catch (IOException e) {
+            // A partial record would hide every later one from replay: refuse further changes.
+            closed = true;
+            throw e;
+        }
+        segmentBytes += record.limit();
+        written += record.limit();
+        appends.increment();
+        return written;
+    }
+
+    /**
+     * Waits until the log is durable up to `position`, syncing it if no other thread is already doing so.
+     */
+    private void awaitDurable(long position) throws IOException {
+        synchronized (syncMonitor) {
+            while (durable < position) {
+                if (!syncing) {
+                    syncing = true;
+                    break;
+                }
+                waitForSync();
+            }
+            if (durable >= position) {
+                return;
+            }
+        }
+        // Leader: no segment can be rotated while `syncing` is set, so `log` holds everything past `durable`.
+        long target = written;
+        boolean synced = false;
+        try {
+            log.force(false);
+            syncs.increment();
+            synced = true;
+        } finally {
+            synchronized (syncMonitor) {
+                if (synced) {
+                    durable = Math.max(durable, target);
+                }
+                syncing = false;
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Syncs and closes the current segment, and, if `next`, starts a new one. Called holding `this`, so no record
+     * is appended meanwhile.
+     */
+    private void rotate(boolean next) throws IOException {
+        synchronized (syncMonitor) {
+            while (syncing) {
+                waitForSync();
+            }
+            syncing = true;
+        }
+        boolean synced = false;
+        try {
+            log.force(false);
+            log.close();
+            synced = true;
+            if (next) {
+                generation++;
+                log = openSegment(generation);
+                segmentBytes = 0;
+            }
+        } finally {
+            synchronized (syncMonitor) {
+                if (synced) {
+                    durable = written;
+                }
+                syncing = false;
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    private void waitForSync() throws InterruptedIOException {
+        try {
+            syncMonitor.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the log to be synced");
+        }
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        FileChannel channel = FileChannel.open(logPath(directory, segment), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        syncDirectory();
+        return channel;
+    }
+
+    /**
+     * Applies the valid records of `file` to `bank`.
+     *
+     * @return The length of the valid prefix of the file.
+     */
+    private static long replay(Path file, LongAccountMap bank) throws IOException {
+        long size = Files.size(file);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Log segment too large: " + file);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full or the file ends.
+            }
+        }
+        buffer.flip();
+
+        CRC32C checksum = new CRC32C();
+        int valid = 0;
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt(valid);
+            int expected = buffer.getInt(valid + 4);
+            int payload = valid + RECORD_HEADER_SIZE;
+            if (length <= 0 || length > MAX_PAYLOAD_SIZE || buffer.limit() - payload < length) {
+                break;
+            }
+            checksum.reset();
+            checksum.update(buffer.array(), payload, length);
+            if ((int) checksum.getValue() != expected) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(buffer.array(), payload, length).slice().order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                byte type = record.get();
+                long id = record.getLong();
+                if (type == PUT) {
+                    Account account = AccountCodec.read(record);
+                    if (record.hasRemaining()) {
+                        break;
+                    }
+                    bank.put(id, account);
+                } else if (type == REMOVE && !record.hasRemaining()) {
+                    bank.remove(id);
+                } else {
+                    break;
+                }
+            } catch (RuntimeException e) {
+                // Malformed payload despite a matching checksum: treat as the end of the log.
+                break;
+            }
+            valid = payload + length;
+            buffer.position(valid);
+        }
+        return valid;
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not all platforms can sync a directory; the rename or creation is then only as durable as the OS makes it.
+        }
+    }
+
+    private static List<Long> generations(Path directory, String prefix, String suffix) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours.
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private static Path logPath(Path directory, long generation) {
+        return directory.resolve(LOG_PREFIX + generation + LOG_SUFFIX);
+    }
+
+    private static Path checkpointPath(Path directory, long generation) {
+        return directory.resolve(CHECKPOINT_PREFIX + generation + CHECKPOINT_SUFFIX);
+    }
+
+    private static Account copy(Account account) {
+        return account == null ? null : new Account(account.getId(), account.getBalance());
+    }
+}
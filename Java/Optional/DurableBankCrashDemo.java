@@ -0,0 +1,247 @@
+package com.sitepoint.optional.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Simulates crashes of a `DurableBank` at every byte of its log, and checks what recovery rebuilds.
+ *
+ * A bank goes through the changes of the examples (accounts with and without balance, an id associated to `null`,
+ * a `null` amount) plus balance changes and removals, with a checkpoint in the middle. Then, for every length of the
+ * last log segment, a copy of the directory with the segment truncated to that length is recovered: the result must
+ * be exactly the state after the last change whose record fits in that length. The same is checked with a byte of
+ * the last record corrupted. A corrupt latest checkpoint must make recovery fail rather than load older files, and a
+ * failed automatic checkpoint must not fail the change that triggered it. Finally, concurrent writers show how many
+ * `fsync`s group commit saves.
+ * Exits with status 1 if any check fails.
+ *
+ * Run with `java com.sitepoint.optional.example.DurableBankCrashDemo [threads] [changesPerThread]`.
+ */
+public class DurableBankCrashDemo {
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        Path root = Files.createTempDirectory("durable-bank");
+        try {
+            crashAtEveryOffset(root);
+            corruptCheckpoint(root);
+            failedCheckpoint(root.resolve("failed-checkpoint"));
+            groupCommit(root.resolve("group-commit"), threads, changes);
+        } finally {
+            deleteRecursively(root);
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " checks FAILED");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    private static void crashAtEveryOffset(Path root) throws IOException {
+        Path original = root.resolve("original");
+        List<Long> ends = new ArrayList<>();
+        List<Map<Long, String>> states = new ArrayList<>();
+        Path segment;
+        try (DurableBank bank = DurableBank.open(original)) {
+            bank.put(1L, new Account(1L, new Balance(100., Currency.EURO)));
+            bank.put(4L, null);
+            bank.put(5L, new Account(2L, null));
+            bank.checkpoint();
+
+            // Changes in the last segment, each followed by the expected state
+            segment = bank.currentLog();
+            ends.add(0L);
+            states.add(describe(bank));
+            bank.setBalance(1L, new Balance(80., Currency.EURO));
+            record(bank, segment, ends, states);
+            bank.setBalance(5L, new Balance(null, Currency.POUND));
+            record(bank, segment, ends, states);
+            bank.put(6L, new Account(null, new Balance(-12.5, Currency.DOLLAR)));
+            record(bank, segment, ends, states);
+            bank.setBalance(1L, null);
+            record(bank, segment, ends, states);
+            bank.remove(4L);
+            record(bank, segment, ends, states);
+            bank.put(4L, new Account(4L, new Balance(1e12, Currency.POUND)));
+            record(bank, segment, ends, states);
+        }
+
+        byte[] log = Files.readAllBytes(segment);
+        int crashes = 0;
+        for (int length = 0; length <= log.length; length++) {
+            int expected = 0;
+            while (expected + 1 < ends.size() && ends.get(expected + 1) <= length) {
+                expected++;
+            }
+            Path copy = copyDirectory(original, root.resolve("crash-" + length));
+            try (FileChannel channel = FileChannel.open(copy.resolve(segment.getFileName()), StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+            checkRecovery(copy, states.get(expected), "truncated at " + length);
+            deleteRecursively(copy);
+            crashes++;
+        }
+
+        // A torn write that left garbage instead of a short record: corrupt each byte of the last record in turn
+        long lastStart = ends.get(ends.size() - 2);
+        for (long offset = lastStart; offset < log.length; offset++) {
+            byte[] corrupted = log.clone();
+            corrupted[(int) offset] ^= 0x5A;
+            Path copy = copyDirectory(original, root.resolve("corrupt-" + offset));
+            Files.write(copy.resolve(segment.getFileName()), corrupted);
+            checkRecovery(copy, states.get(states.size() - 2), "corrupted at " + offset);
+            deleteRecursively(copy);
+            crashes++;
+        }
+        System.out.printf("%d simulated crashes over a %d-byte log of %d changes%n", crashes, log.length, ends.size() - 1);
+    }
+
+    private static void corruptCheckpoint(Path root) throws IOException {
+        Path directory = root.resolve("corrupt-checkpoint");
+        try (DurableBank bank = DurableBank.open(directory)) {
+            bank.put(1L, new Account(1L, new Balance(100., Currency.EURO)));
+            bank.checkpoint();
+            bank.put(2L, new Account(2L, new Balance(5., Currency.DOLLAR)));
+            bank.checkpoint();
+        }
+        Path checkpoint = directory.resolve("checkpoint-2.ldg");
+        byte[] bytes = Files.readAllBytes(checkpoint);
+        // A huge record count in the header: more records than the file holds
+        bytes[15] = 0x7F;
+        Files.write(checkpoint, bytes);
+        try (DurableBank recovered = DurableBank.open(directory)) {
+            check(false, "corrupt checkpoint: recovered " + recovered.size() + " accounts instead of failing");
+        } catch (IOException e) {
+            check(e.getMessage().contains(checkpoint.getFileName().toString()), "corrupt checkpoint: " + e);
+        }
+    }
+
+    private static void failedCheckpoint(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        // A directory where the first checkpoint's temporary file goes makes that checkpoint fail
+        Files.createDirectory(directory.resolve("checkpoint-1.ldg.tmp"));
+        try (DurableBank bank = DurableBank.open(directory, 1)) {
+            bank.put(1L, new Account(1L, new Balance(100., Currency.EURO)));
+            check(bank.checkpointFailureCount() == 1, "failed checkpoint counted");
+            bank.put(2L, new Account(2L, null));
+            check(bank.checkpointFailureCount() == 1, "next checkpoint succeeds");
+        }
+        try (DurableBank recovered = DurableBank.open(directory)) {
+            check(recovered.size() == 2 && recovered.get(1L).getBalance().getAmount() == 100.,
+                    "failed checkpoint: changes recovered");
+        }
+    }
+
+    private static void checkRecovery(Path directory, Map<Long, String> expected, String description) throws IOException {
+        try (DurableBank recovered = DurableBank.open(directory)) {
+            Map<Long, String> actual = describe(recovered);
+            check(actual.equals(expected), description + ": expected " + expected + ", recovered " + actual);
+            // The recovered bank must keep working, and survive another recovery
+            recovered.put(99L, new Account(99L, new Balance(1., Currency.DOLLAR)));
+        }
+        try (DurableBank reopened = DurableBank.open(directory)) {
+            check(reopened.containsKey(99L) && reopened.size() == expected.size() + 1, description + ": reopened");
+        }
+    }
+
+    private static void groupCommit(Path directory, int threads, int changes) throws IOException, InterruptedException {
+        try (DurableBank bank = DurableBank.open(directory)) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long first = (long) t * changes;
+                Thread writer = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (long id = first; id < first + changes; id++) {
+                            double amount = ThreadLocalRandom.current().nextInt(100_000) / 100.;
+                            bank.put(id, new Account(id, new Balance(amount, Currency.DOLLAR)));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                writer.start();
+                writers.add(writer);
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            long elapsed = System.nanoTime() - begin;
+            check(bank.size() == threads * changes, "all concurrent changes applied");
+            System.out.printf("Group commit: %d changes, %d fsyncs (%.1f changes/fsync), %.0f changes/s%n",
+                    bank.appendCount(), bank.syncCount(), (double) bank.appendCount() / bank.syncCount(),
+                    bank.appendCount() * 1e9 / elapsed);
+        }
+        try (DurableBank recovered = DurableBank.open(directory)) {
+            check(recovered.size() == threads * changes, "all concurrent changes recovered");
+        }
+    }
+
+    private static void record(DurableBank bank, Path segment, List<Long> ends, List<Map<Long, String>> states)
+            throws IOException {
+        ends.add(Files.size(segment));
+        states.add(describe(bank));
+    }
+
+    private static Map<Long, String> describe(DurableBank bank) {
+        Map<Long, String> state = new TreeMap<>();
+        for (long id = 0; id < 100; id++) {
+            if (bank.containsKey(id)) {
+                Account account = bank.get(id);
+                Balance balance = account == null ? null : account.getBalance();
+                state.put(id, account == null ? "null" : "Account(" + account.getId() + ", "
+                        + (balance == null ? "null" : balance.getAmount() + " " + balance.getCurrency()) + ")");
+            }
+        }
+        return state;
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.out.println("FAILED: " + description);
+        }
+    }
+
+    private static Path copyDirectory(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(from)) {
+            for (Path file : files) {
+                Files.copy(file, to.resolve(file.getFileName()));
+            }
+        }
+        return to;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
+                for (Path file : files) {
+                    deleteRecursively(file);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
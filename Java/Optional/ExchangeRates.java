@@ -0,0 +1,107 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * A table of multipliers converting amounts in each `Currency` into dollars, indexed by `Currency.ordinal()`.
+ *
+ * The table is a plain `double[]` that is never modified once published: updates build a new array and swap it in
+ * atomically (copy-on-write). Readers only pay for a volatile read of the current array and an array access, never
+ * take a lock, and always see a complete set of rates. Code that needs several rates to be consistent with each
+ * other (for instance a batch conversion) should read `table()` once and use that array throughout.
+ */
+final class ExchangeRates {
+
+    private static final int CURRENCIES = Currency.values().length;
+
+    /**
+     * The rates used by the examples, and by default by all the conversions in this package.
+     */
+    private static final ExchangeRates DOLLAR_RATES = new ExchangeRates(defaultTable());
+
+    private final AtomicReference<double[]> table;
+
+    public ExchangeRates(double[] rates) {
+        table = new AtomicReference<>(validatedCopy(rates));
+    }
+
+    public static ExchangeRates dollarRates() {
+        return DOLLAR_RATES;
+    }
+
+    public double rate(Currency currency) {
+        return table.get()[currency.ordinal()];
+    }
+
+    public double rate(int currency) {
+        return table.get()[currency];
+    }
+
+    /**
+     * @return The current table. The array is shared and must not be modified.
+     */
+    double[] table() {
+        return table.get();
+    }
+
+    public double[] snapshot() {
+        return table.get().clone();
+    }
+
+    /**
+     * Atomically replaces the whole table with a copy of `rates`.
+     */
+    public void swap(double[] rates) {
+        table.set(validatedCopy(rates));
+    }
+
+    /**
+     * Atomically replaces the rate of a single currency, leaving the others untouched.
+     */
+    public void set(Currency currency, double rate) {
+        update(rates -> {
+            rates[currency.ordinal()] = rate;
+            return rates;
+        });
+    }
+
+    /**
+     * Atomically applies `update` to a copy of the current table and publishes the result.
+     * `update` may be called more than once if other updates happen concurrently.
+     */
+    public void update(UnaryOperator<double[]> update) {
+        double[] current;
+        double[] next;
+        do {
+            current = table.get();
+            next = validatedCopy(update.apply(current.clone()));
+        } while (!table.compareAndSet(current, next));
+    }
+
+    @Override
+    public String toString() {
+        return "ExchangeRates" + Arrays.toString(table.get());
+    }
+
+    private static double[] defaultTable() {
+        double[] rates = new double[CURRENCIES];
+        rates[Currency.DOLLAR.ordinal()] = 1.;
+        rates[Currency.POUND.ordinal()] = 1.3;
+        rates[Currency.EURO.ordinal()] = 1.1;
+        return rates;
+    }
+
+    private static double[] validatedCopy(double[] rates) {
+        if (rates.length != CURRENCIES) {
+            throw new IllegalArgumentException("Expected " + CURRENCIES + " rates, got " + rates.length);
+        }
+        for (double rate : rates) {
+            if (!(rate >= 0.) || Double.isInfinite(rate)) {
+                throw new IllegalArgumentException("Invalid rate: " + rate);
+            }
+        }
+        return rates.clone();
+    }
+}
@@ -0,0 +1,77 @@
+package com.sitepoint.optional.example;
+
+import java.util.Random;
+
+/**
+ * Compares the cost of converting amounts into dollars with the multipliers hard-coded in a `switch`, as in the
+ * `toDollars` functions of the examples, against reading them from `ExchangeRates`.
+ *
+ * Run with `java com.sitepoint.optional.example.ExchangeRatesBenchmark [size] [rounds]`: after a warm-up, each
+ * round converts `size` random balances with both approaches and prints the average time per conversion.
+ */
+public class ExchangeRatesBenchmark {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(42);
+        double[] amounts = new double[size];
+        Currency[] currencies = new Currency[size];
+        for (int i = 0; i < size; i++) {
+            amounts[i] = random.nextInt(1_000_000) / 100.;
+            currencies[i] = CURRENCIES[random.nextInt(CURRENCIES.length)];
+        }
+        ExchangeRates rates = ExchangeRates.dollarRates();
+
+        double sink = 0.;
+        for (int i = 0; i < rounds; i++) {
+            sink += inlineSwitch(amounts, currencies) + rateTable(amounts, currencies, rates);
+        }
+
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            sink += inlineSwitch(amounts, currencies);
+            long switchNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += rateTable(amounts, currencies, rates);
+            long tableNanos = System.nanoTime() - start;
+
+            System.out.printf("Round %2d: switch %.2f ns/op, table %.2f ns/op%n",
+                    i, (double) switchNanos / size, (double) tableNanos / size);
+        }
+        // Printing the checksum keeps the JIT from eliminating the conversions.
+        System.out.println("Checksum: " + sink);
+    }
+
+    private static double inlineSwitch(double[] amounts, Currency[] currencies) {
+        double total = 0.;
+        for (int i = 0; i < amounts.length; i++) {
+            switch (currencies[i]) {
+                case DOLLAR:
+                    total += amounts[i];
+                    break;
+                case POUND:
+                    total += amounts[i] * 1.3;
+                    break;
+                case EURO:
+                    total += amounts[i] * 1.1;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return total;
+    }
+
+    private static double rateTable(double[] amounts, Currency[] currencies, ExchangeRates rates) {
+        double total = 0.;
+        for (int i = 0; i < amounts.length; i++) {
+            total += amounts[i] * rates.rate(currencies[i]);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,78 @@
+package com.sitepoint.optional.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Measures the throughput of `FeedIngestor` on a random feed held in memory, so that only parsing and updating the
+ * bank and the totals are timed.
+ *
+ * The feed mixes all the record forms: mostly accounts with a balance, and a few `null` amounts, `null` balances and
+ * `null` accounts. Ids are drawn from `bankSize` ids, so records for ids already in the bank replace them.
+ *
+ * Run with `java com.sitepoint.optional.example.FeedIngestionBenchmark [records] [bankSize] [rounds]`: after a
+ * warm-up, each round ingests the whole feed into an empty bank and prints the time per record and the throughput.
+ * The last round's totals are checked against a full `BankValuation`.
+ */
+public class FeedIngestionBenchmark {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    public static void main(String[] args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 3_000_000;
+        int bankSize = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        byte[] feed = randomFeed(new Random(42), records, bankSize);
+
+        double sink = 0.;
+        for (int i = 0; i < rounds; i++) {
+            sink += ingest(feed, bankSize).totalDollars();
+        }
+
+        FeedIngestor last = null;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            last = ingest(feed, bankSize);
+            long nanos = System.nanoTime() - start;
+            sink += last.totalDollars();
+
+            System.out.printf("Round %2d: %.2f ns/record, %.2f M records/s%n",
+                    i, (double) nanos / records, records * 1e3 / nanos);
+        }
+        System.out.printf("%d records, %d accounts, %.2f MB: totals match a full valuation: %b%n", records,
+                last.bank().size(), feed.length / 1e6, last.totals().equals(BankValuation.sequential(last.bank())));
+        // Printing the checksum keeps the JIT from eliminating the ingestion.
+        System.out.println("Checksum: " + sink);
+    }
+
+    private static FeedIngestor ingest(byte[] feed, int bankSize) throws IOException {
+        FeedIngestor ingestor = new FeedIngestor(new LongAccountMap(bankSize));
+        ingestor.ingest(new ByteArrayInputStream(feed));
+        return ingestor;
+    }
+
+    private static byte[] randomFeed(Random random, int records, int bankSize) {
+        StringBuilder feed = new StringBuilder(records * 24);
+        for (int i = 0; i < records; i++) {
+            feed.append(random.nextInt(bankSize));
+            int form = random.nextInt(100);
+            if (form < 2) {
+                // `null` account
+            } else if (form < 4) {
+                feed.append(",,");
+            } else if (form < 6) {
+                feed.append(",,").append(CURRENCIES[random.nextInt(CURRENCIES.length)]);
+            } else {
+                int cents = random.nextInt(2_000_000) - 500_000;
+                feed.append(cents < 0 ? ",-" : ",").append(Math.abs(cents) / 100).append('.')
+                        .append(Math.abs(cents) % 100 < 10 ? "0" : "").append(Math.abs(cents) % 100)
+                        .append(',').append(CURRENCIES[random.nextInt(CURRENCIES.length)]);
+            }
+            feed.append('\n');
+        }
+        return feed.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,274 @@
+package com.sitepoint.optional.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Ingests a feed of account records into a `LongAccountMap`, keeping per-currency totals up to date as records
+ * arrive, so that the total exposure is always available without a `toDollars` pass over the whole bank.
+ *
+ * The feed is ASCII text, one record per line, in one of these forms:
+ * - `id,amount,currency`: an account with a balance, e.g. `1,100.00,EURO`;
+ * - `id,,currency`: an account whose balance has a `null` amount;
+ * - `id,,`: an account with a `null` balance (`new Account(5L, null)`);
+ * - `id`: an id associated to a `null` account (`bank.put(4L, null)`).
+ * Amounts have at most 16 digits, two of which after the decimal point. A record for an id already in the bank
+ * replaces it, and its previous balance is removed from the totals.
+ *
+ * The feed is read in fixed-size chunks and parsed in place, byte by byte: besides the `Account` and `Balance`
+ * stored in the bank, no object is created per record.
+ *
+ * This class is not thread-safe.
+ */
+final class FeedIngestor {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // Once scaled to minor units, an amount with up to 16 digits always fits a `long`.
+    private static final int MAX_AMOUNT_DIGITS = 16;
+    private static final Currency[] CURRENCIES = Currency.values();
+    private static final byte[][] CURRENCY_NAMES = new byte[CURRENCIES.length][];
+
+    static {
+        for (Currency currency : CURRENCIES) {
+            CURRENCY_NAMES[currency.ordinal()] = currency.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final LongAccountMap bank;
+    private final CurrencyTotals totals;
+    private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+    private long lines;
+
+    /**
+     * @param bank The bank to update; the totals start from its current content.
+     */
+    public FeedIngestor(LongAccountMap bank) {
+        this.bank = bank;
+        this.totals = BankValuation.sequential(bank);
+    }
+
+    public LongAccountMap bank() {
+        return bank;
+    }
+
+    /**
+     * @return The live totals of the bank; they change as records are ingested.
+     */
+    public CurrencyTotals totals() {
+        return totals;
+    }
+
+    public double totalDollars() {
+        return totals.totalDollars();
+    }
+
+    public long ingest(InputStream in) throws IOException {
+        return ingest(Channels.newChannel(in));
+    }
+
+    /**
+     * Reads records from `channel` until the end of the stream.
+     *
+     * @return The number of records ingested.
+     * @throws IOException If reading fails, or a record is malformed: records before it are ingested.
+     * @throws ArithmeticException If a record would overflow the totals: records before it are ingested, and neither
+     *                             the bank nor the totals are changed for it.
+     */
+    public long ingest(ReadableByteChannel channel) throws IOException {
+        byte[] bytes = buffer.array();
+        long records = 0;
+        buffer.clear();
+        boolean endOfStream = false;
+        while (!endOfStream) {
+            endOfStream = channel.read(buffer) < 0;
+            int limit = buffer.position();
+            int start = 0;
+            for (int i = 0; i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    records += parseRecord(bytes, start, i);
+                    start = i + 1;
+                }
+            }
+            if (endOfStream) {
+                records += parseRecord(bytes, start, limit);
+            } else if (start == 0 && limit == bytes.length) {
+                throw new IOException("Record longer than " + bytes.length + " bytes at line " + (lines + 1));
+            } else {
+                // Move the incomplete record at the end of the chunk to the beginning of the buffer.
+                System.arraycopy(bytes, start, bytes, 0, limit - start);
+                buffer.position(limit - start);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Parses the record in `bytes[from, to)` and applies it to the bank.
+     *
+     * @return 1 if a record was ingested, 0 for an empty line.
+     */
+    private int parseRecord(byte[] bytes, int from, int to) throws IOException {
+        lines++;
+        if (to > from && bytes[to - 1] == '\r') {
+            to--;
+        }
+        if (to == from) {
+            return 0;
+        }
+
+        int firstComma = indexOf(bytes, from, to, (byte) ',');
+        long id = parseLong(bytes, from, firstComma);
+        if (firstComma == to) {
+            replace(id, null, -1, 0);
+            return 1;
+        }
+        int secondComma = indexOf(bytes, firstComma + 1, to, (byte) ',');
+        if (secondComma == to) {
+            throw malformed("expected 1 or 3 fields");
+        }
+        boolean hasAmount = secondComma > firstComma + 1;
+        boolean hasCurrency = to > secondComma + 1;
+        if (!hasAmount && !hasCurrency) {
+            replace(id, new Account(id, null), -1, 0);
+            return 1;
+        }
+        if (!hasCurrency) {
+            throw malformed("missing currency");
+        }
+        int currency = parseCurrency(bytes, secondComma + 1, to);
+        if (!hasAmount) {
+            replace(id, new Account(id, new Balance(null, CURRENCIES[currency])), -1, 0);
+            return 1;
+        }
+        long minorUnits = parseMinorUnits(bytes, firstComma + 1, secondComma);
+        replace(id, new Account(id, new Balance(CompactBalance.toAmount(minorUnits), CURRENCIES[currency])), currency,
+                minorUnits);
+        return 1;
+    }
+
+    /**
+     * Stores `account`, removing the balance it replaces from the totals and adding its own. The new totals are
+     * computed first, and the bank and the totals are only updated once they are known to fit.
+     *
+     * @param currency The ordinal of the currency of `account`'s amount, or -1 if it has none.
+     * @param minorUnits The amount of `account`, in minor units, if `currency` is not -1.
+     * @throws ArithmeticException If the totals would overflow; neither the bank nor the totals are changed.
+     */
+    private void replace(long id, Account account, int currency, long minorUnits) {
+        Account previous = bank.get(id);
+        Balance previousBalance = previous == null ? null : previous.getBalance();
+        int previousCurrency = -1;
+        long previousMinorUnits = 0;
+        if (previousBalance != null && previousBalance.getAmount() != null && previousBalance.getCurrency() != null) {
+            previousCurrency = previousBalance.getCurrency().ordinal();
+            previousMinorUnits = CompactBalance.toMinorUnits(previousBalance.getAmount());
+        }
+
+        long previousTotal = 0;
+        long total = 0;
+        if (previousCurrency >= 0) {
+            previousTotal = Math.subtractExact(totals.minorUnits(CURRENCIES[previousCurrency]), previousMinorUnits);
+        }
+        if (currency >= 0) {
+            long base = currency == previousCurrency ? previousTotal : totals.minorUnits(CURRENCIES[currency]);
+            total = Math.addExact(base, minorUnits);
+        }
+
+        bank.put(id, account);
+        if (previousCurrency >= 0) {
+            totals.set(previousCurrency, previousTotal, totals.count(CURRENCIES[previousCurrency]) - 1);
+        }
+        if (currency >= 0) {
+            totals.set(currency, total, totals.count(CURRENCIES[currency]) + 1);
+        }
+    }
+
+    private long parseLong(byte[] bytes, int from, int to) throws IOException {
+        boolean negative = from < to && bytes[from] == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to) {
+            throw malformed("missing id");
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed("invalid id");
+            }
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw malformed("id out of range");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private long parseMinorUnits(byte[] bytes, int from, int to) throws IOException {
+        boolean negative = bytes[from] == '-';
+        int i = negative ? from + 1 : from;
+        long value = 0;
+        int decimals = -1;
+        int digits = 0;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || decimals >= 2) {
+                throw malformed("invalid amount");
+            }
+            if (++digits > MAX_AMOUNT_DIGITS) {
+                throw malformed("amount out of range");
+            }
+            value = value * 10 + digit;
+            if (decimals >= 0) {
+                decimals++;
+            }
+        }
+        if (digits == 0) {
+            throw malformed("invalid amount");
+        }
+        for (int d = Math.max(decimals, 0); d < 2; d++) {
+            value *= 10;
+        }
+        return negative ? -value : value;
+    }
+
+    private int parseCurrency(byte[] bytes, int from, int to) throws IOException {
+        for (int c = 0; c < CURRENCY_NAMES.length; c++) {
+            byte[] name = CURRENCY_NAMES[c];
+            if (name.length == to - from && regionMatches(bytes, from, name)) {
+                return c;
+            }
+        }
+        throw malformed("unknown currency");
+    }
+
+    private static boolean regionMatches(byte[] bytes, int from, byte[] name) {
+        for (int i = 0; i < name.length; i++) {
+            if (bytes[from + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private IOException malformed(String reason) {
+        return new IOException("Malformed record at line " + lines + ": " + reason);
+    }
+}
@@ -0,0 +1,313 @@
+package com.sitepoint.optional.example;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * A bank with secondary indexes by currency and amount, besides the primary access by id.
+ *
+ * For each currency, the accounts with a balance in it are kept in a sorted set of (amount in minor units, id)
+ * entries, so range queries take O(log n + k) for `k` results. `topDollars` merges the per-currency indexes from
+ * their largest amounts down, through a heap with one cursor per currency: since converting to dollars multiplies
+ * all the amounts of a currency by the same positive rate, each index is also sorted by value in dollars, and the
+ * top `k` take O(k log c) for `c` currencies. Accounts with a `null` balance are kept in a set of their own; those
+ * without a value for another reason (`null` account, amount or currency) are only reachable by id.
+ *
+ * Amounts are indexed in minor units, rounded as by `CompactBalance.toMinorUnits`, but query bounds are not rounded:
+ * an account matches if its amount in minor units, as a `double`, compares to the bound as the query says. So
+ * `above(EURO, 10.005)` includes `10.01`. Infinite bounds are unbounded, and a `NaN` bound matches nothing.
+ *
+ * Indexes are updated by `put`, `setBalance` and `remove`: an account replaced by `put`, or whose balance becomes
+ * `null`, moves to its new place. They reflect the balance an account had when it was put, so balances must not be
+ * changed in place (e.g. with `Account.deposit`) but through this class.
+ *
+ * This class is not thread-safe.
+ */
+final class IndexedBank {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final LongAccountMap bank = new LongAccountMap(16);
+    private final Map<Long, IndexEntry> entries = new HashMap<>();
+    private final TreeSet<IndexEntry>[] byAmount;
+    private final TreeSet<Long> nullBalances = new TreeSet<>();
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public IndexedBank() {
+        byAmount = new TreeSet[CURRENCIES.length];
+        for (int i = 0; i < byAmount.length; i++) {
+            byAmount[i] = new TreeSet<>();
+        }
+    }
+
+    public static IndexedBank of(LongAccountMap bank) {
+        IndexedBank indexed = new IndexedBank();
+        bank.forEach(indexed::put);
+        return indexed;
+    }
+
+    public Account get(long id) {
+        return bank.get(id);
+    }
+
+    public boolean containsKey(long id) {
+        return bank.containsKey(id);
+    }
+
+    public int size() {
+        return bank.size();
+    }
+
+    /**
+     * Equivalent of the `findAccount` function in the examples.
+     */
+    public Function<Long, Optional<Account>> finder() {
+        return id -> id == null ? Optional.empty() : Optional.ofNullable(bank.get(id));
+    }
+
+    /**
+     * Associates `account` to `id`, moving `id` in the indexes if it was already in the bank.
+     *
+     * @return The previous account associated to `id`, or `null`.
+     */
+    public Account put(long id, Account account) {
+        unindex(id);
+        Account previous = bank.put(id, account);
+        index(id, account);
+        return previous;
+    }
+
+    /**
+     * Replaces the account associated to `id` with a new `Account` holding `balance`, which may be `null`.
+     *
+     * @throws IllegalStateException If `id` is not associated to an account.
+     */
+    public void setBalance(long id, Balance balance) {
+        Account account = bank.get(id);
+        if (account == null) {
+            throw new IllegalStateException("No account for id " + id);
+        }
+        put(id, new Account(account.getId(), balance));
+    }
+
+    public boolean remove(long id) {
+        unindex(id);
+        return bank.remove(id);
+    }
+
+    /**
+     * @return The ids of the accounts with a balance in `currency` between `minAmount` and `maxAmount` inclusive,
+     * by increasing amount.
+     */
+    public long[] between(Currency currency, double minAmount, double maxAmount) {
+        if (Double.isNaN(minAmount) || Double.isNaN(maxAmount)) {
+            return new long[0];
+        }
+        long min = lowestMinorUnits(minAmount, false);
+        long max = highestMinorUnits(maxAmount);
+        if (min > max) {
+            return new long[0];
+        }
+        return ids(byAmount[currency.ordinal()].subSet(
+                new IndexEntry(min, Long.MIN_VALUE, currency), true, new IndexEntry(max, Long.MAX_VALUE, currency), true));
+    }
+
+    /**
+     * @return The ids of the accounts with a balance in `currency` strictly greater than `amount`, by increasing
+     * amount.
+     */
+    public long[] above(Currency currency, double amount) {
+        if (Double.isNaN(amount)) {
+            return new long[0];
+        }
+        return ids(byAmount[currency.ordinal()].tailSet(
+                new IndexEntry(lowestMinorUnits(amount, true), Long.MIN_VALUE, currency), true));
+    }
+
+    /**
+     * @return The ids of the `k` accounts with the largest value in dollars, at the current rates, by decreasing
+     * value; ties are broken by decreasing id.
+     */
+    public long[] topDollars(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        double[] rates = ExchangeRates.dollarRates().table();
+        PriorityQueue<Cursor> heads = new PriorityQueue<>(CURRENCIES.length);
+        for (TreeSet<IndexEntry> index : byAmount) {
+            Iterator<IndexEntry> iterator = index.descendingIterator();
+            if (iterator.hasNext()) {
+                heads.add(new Cursor(iterator, rates));
+            }
+        }
+        long[] top = new long[Math.min(k, indexedCount())];
+        for (int i = 0; i < top.length; i++) {
+            Cursor head = heads.poll();
+            top[i] = head.entry.id;
+            if (head.advance()) {
+                heads.add(head);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * @return The ids of the accounts with a `null` balance, in increasing order.
+     */
+    public NavigableSet<Long> nullBalanceIds() {
+        return Collections.unmodifiableNavigableSet(nullBalances);
+    }
+
+    /**
+     * @return The number of accounts with a balance in `currency`.
+     */
+    public int count(Currency currency) {
+        return byAmount[currency.ordinal()].size();
+    }
+
+    private int indexedCount() {
+        int count = 0;
+        for (TreeSet<IndexEntry> index : byAmount) {
+            count += index.size();
+        }
+        return count;
+    }
+
+    private void index(long id, Account account) {
+        if (account == null) {
+            return;
+        }
+        Balance balance = account.getBalance();
+        if (balance == null) {
+            nullBalances.add(id);
+        } else if (balance.getAmount() != null && balance.getCurrency() != null) {
+            IndexEntry entry = new IndexEntry(CompactBalance.toMinorUnits(balance.getAmount()), id, balance.getCurrency());
+            byAmount[entry.currency.ordinal()].add(entry);
+            entries.put(id, entry);
+        }
+    }
+
+    private void unindex(long id) {
+        IndexEntry entry = entries.remove(id);
+        if (entry != null) {
+            byAmount[entry.currency.ordinal()].remove(entry);
+        } else {
+            nullBalances.remove(id);
+        }
+    }
+
+    /**
+     * @return The smallest minor units whose amount is at least `amount`, or strictly greater if `strict`:
+     * `Long.MIN_VALUE + 1` (below any indexed amount) if all are, `Long.MAX_VALUE` (above any) if none is.
+     */
+    private static long lowestMinorUnits(double amount, boolean strict) {
+        double minorUnits = amount * CompactBalance.MINOR_UNITS_PER_UNIT;
+        if (minorUnits <= -0x1p63) {
+            return Long.MIN_VALUE + 1;
+        }
+        if (minorUnits >= 0x1p63) {
+            return Long.MAX_VALUE;
+        }
+        // The product is rounded, so its floor may be off by one: step to the exact bound
+        long lowest = (long) Math.floor(minorUnits);
+        while (!exceeds(lowest, amount, strict)) {
+            lowest++;
+        }
+        while (exceeds(lowest - 1, amount, strict)) {
+            lowest--;
+        }
+        return lowest;
+    }
+
+    /**
+     * @return The largest minor units whose amount is at most `amount`: `Long.MAX_VALUE` (above any indexed amount)
+     * if all are, `Long.MIN_VALUE` (below any) if none is.
+     */
+    private static long highestMinorUnits(double amount) {
+        double minorUnits = amount * CompactBalance.MINOR_UNITS_PER_UNIT;
+        if (minorUnits >= 0x1p63) {
+            return Long.MAX_VALUE;
+        }
+        if (minorUnits <= -0x1p63) {
+            return Long.MIN_VALUE;
+        }
+        long highest = (long) Math.floor(minorUnits);
+        while (exceeds(highest, amount, true)) {
+            highest--;
+        }
+        while (!exceeds(highest + 1, amount, true)) {
+            highest++;
+        }
+        return highest;
+    }
+
+    private static boolean exceeds(long minorUnits, double amount, boolean strict) {
+        double value = CompactBalance.toAmount(minorUnits);
+        return strict ? value > amount : value >= amount;
+    }
+
+    private static long[] ids(NavigableSet<IndexEntry> entries) {
+        long[] ids = new long[entries.size()];
+        int i = 0;
+        for (IndexEntry entry : entries) {
+            ids[i++] = entry.id;
+        }
+        return ids;
+    }
+
+    private static final class IndexEntry implements Comparable<IndexEntry> {
+        final long minorUnits;
+        final long id;
+        final Currency currency;
+
+        IndexEntry(long minorUnits, long id, Currency currency) {
+            this.minorUnits = minorUnits;
+            this.id = id;
+            this.currency = currency;
+        }
+
+        @Override
+        public int compareTo(IndexEntry other) {
+            int byAmount = Long.compare(minorUnits, other.minorUnits);
+            return byAmount != 0 ? byAmount : Long.compare(id, other.id);
+        }
+    }
+
+    /**
+     * The next entry of a currency's index in the k-way merge of `topDollars`.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+        private final Iterator<IndexEntry> iterator;
+        private final double[] rates;
+        IndexEntry entry;
+        double dollars;
+
+        Cursor(Iterator<IndexEntry> iterator, double[] rates) {
+            this.iterator = iterator;
+            this.rates = rates;
+            advance();
+        }
+
+        boolean advance() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            entry = iterator.next();
+            dollars = CompactBalance.toAmount(entry.minorUnits) * rates[entry.currency.ordinal()];
+            return true;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int byDollars = Double.compare(other.dollars, dollars);
+            return byDollars != 0 ? byDollars : Long.compare(other.entry.id, entry.id);
+        }
+    }
+}
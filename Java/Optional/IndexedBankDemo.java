@@ -0,0 +1,172 @@
+package com.sitepoint.optional.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks the secondary indexes of `IndexedBank` against a scan of the same accounts.
+ *
+ * - Boundaries: query bounds are compared exactly, not rounded to minor units (`above(10.005)` includes `10.01`),
+ *   infinite bounds are unbounded and `NaN` bounds match nothing.
+ * - Consistency: after random `put`s replacing accounts, balances set to `null` and back, and removals, every
+ *   currency and amount range, the `null` balances and the top accounts must match the scan.
+ * Exits with status 1 if any check fails.
+ *
+ * Run with `java com.sitepoint.optional.example.IndexedBankDemo [accounts] [changes]`.
+ */
+public class IndexedBankDemo {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private static int failures = 0;
+
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        boundaries();
+        consistency(new Random(42), accounts, changes);
+
+        if (failures > 0) {
+            System.out.println(failures + " checks FAILED");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    private static void boundaries() {
+        IndexedBank bank = new IndexedBank();
+        bank.put(1L, new Account(1L, new Balance(10., Currency.EURO)));
+        bank.put(2L, new Account(2L, new Balance(10.01, Currency.EURO)));
+        bank.put(3L, new Account(3L, new Balance(10.02, Currency.EURO)));
+        bank.put(4L, new Account(4L, new Balance(-5., Currency.EURO)));
+
+        check(Arrays.equals(bank.above(Currency.EURO, 10.005), new long[]{2L, 3L}), "above 10.005 includes 10.01");
+        check(Arrays.equals(bank.above(Currency.EURO, 10.01), new long[]{3L}), "above 10.01 excludes 10.01");
+        check(Arrays.equals(bank.between(Currency.EURO, 10.005, 10.015), new long[]{2L}), "between 10.005 and 10.015");
+        check(Arrays.equals(bank.between(Currency.EURO, 10.01, 10.01), new long[]{2L}), "between 10.01 and 10.01");
+        check(Arrays.equals(bank.between(Currency.EURO, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY),
+                new long[]{4L, 1L, 2L, 3L}), "between infinities");
+        check(Arrays.equals(bank.above(Currency.EURO, Double.NEGATIVE_INFINITY), new long[]{4L, 1L, 2L, 3L}),
+                "above -infinity");
+        check(bank.above(Currency.EURO, Double.POSITIVE_INFINITY).length == 0, "above +infinity");
+        check(bank.above(Currency.EURO, Double.NaN).length == 0, "above NaN");
+        check(bank.between(Currency.EURO, Double.NaN, 20.).length == 0, "between NaN and 20");
+        check(bank.between(Currency.EURO, 1e300, Double.POSITIVE_INFINITY).length == 0, "between 1e300 and infinity");
+        check(Arrays.equals(bank.between(Currency.EURO, -1e300, 0.), new long[]{4L}), "between -1e300 and 0");
+    }
+
+    private static void consistency(Random random, int accounts, int changes) {
+        IndexedBank bank = new IndexedBank();
+        Map<Long, Account> expected = new HashMap<>();
+        for (int change = 0; change < changes; change++) {
+            long id = random.nextInt(accounts);
+            int operation = random.nextInt(10);
+            if (operation < 6) {
+                // New account, or a replacement moving the id to another currency or amount
+                Account account = randomAccount(random, id);
+                bank.put(id, account);
+                expected.put(id, account);
+            } else if (operation < 8 && expected.get(id) != null) {
+                Balance balance = random.nextBoolean() ? null : randomBalance(random);
+                bank.setBalance(id, balance);
+                expected.put(id, new Account(expected.get(id).getId(), balance));
+            } else if (operation < 9) {
+                boolean present = expected.containsKey(id);
+                expected.remove(id);
+                check(bank.remove(id) == present, "remove " + id);
+            } else {
+                bank.put(id, null);
+                expected.put(id, null);
+            }
+            if (change % 1_000 == 0) {
+                checkIndexes(bank, expected, random, "after " + change + " changes");
+            }
+        }
+        checkIndexes(bank, expected, random, "at the end");
+        System.out.printf("%d changes on %d accounts: %d in the bank, %d with a null balance%n", changes, accounts,
+                bank.size(), bank.nullBalanceIds().size());
+    }
+
+    private static void checkIndexes(IndexedBank bank, Map<Long, Account> expected, Random random, String when) {
+        check(bank.size() == expected.size(), "size " + when);
+        List<Long> nullBalances = new ArrayList<>();
+        for (Map.Entry<Long, Account> entry : expected.entrySet()) {
+            if (entry.getValue() != null && entry.getValue().getBalance() == null) {
+                nullBalances.add(entry.getKey());
+            }
+        }
+        nullBalances.sort(null);
+        check(new ArrayList<>(bank.nullBalanceIds()).equals(nullBalances), "null balances " + when);
+
+        for (Currency currency : CURRENCIES) {
+            check(bank.count(currency) == scan(expected, currency, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)
+                    .length, "count of " + currency + " " + when);
+            double min = random.nextInt(2_000) / 100. - 10.;
+            double max = min + random.nextInt(1_000) / 100.;
+            check(Arrays.equals(sorted(bank.between(currency, min, max)), scan(expected, currency, min, max)),
+                    currency + " between " + min + " and " + max + " " + when);
+            check(Arrays.equals(sorted(bank.above(currency, min)),
+                    scan(expected, currency, Math.nextUp(min), Double.POSITIVE_INFINITY)),
+                    currency + " above " + min + " " + when);
+        }
+
+        long[] top = bank.topDollars(10);
+        double previous = Double.POSITIVE_INFINITY;
+        for (long id : top) {
+            double dollars = dollars(expected.get(id));
+            check(dollars <= previous, "top dollars in decreasing order " + when);
+            previous = dollars;
+        }
+    }
+
+    /**
+     * @return The sorted ids of the accounts with an amount in `currency` between `min` and `max` inclusive.
+     */
+    private static long[] scan(Map<Long, Account> accounts, Currency currency, double min, double max) {
+        List<Long> ids = new ArrayList<>();
+        for (Map.Entry<Long, Account> entry : accounts.entrySet()) {
+            Account account = entry.getValue();
+            Balance balance = account == null ? null : account.getBalance();
+            if (balance != null && balance.getAmount() != null && balance.getCurrency() == currency) {
+                double amount = CompactBalance.toAmount(CompactBalance.toMinorUnits(balance.getAmount()));
+                if (amount >= min && amount <= max) {
+                    ids.add(entry.getKey());
+                }
+            }
+        }
+        return ids.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private static long[] sorted(long[] ids) {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static double dollars(Account account) {
+        Balance balance = account.getBalance();
+        return balance.getAmount() * ExchangeRates.dollarRates().rate(balance.getCurrency());
+    }
+
+    private static Account randomAccount(Random random, long id) {
+        return new Account(id, random.nextInt(5) == 0 ? null : randomBalance(random));
+    }
+
+    private static Balance randomBalance(Random random) {
+        Double amount = random.nextInt(20) == 0 ? null : (random.nextInt(4_000) - 1_000) / 100.;
+        Currency currency = random.nextInt(20) == 0 ? null : CURRENCIES[random.nextInt(CURRENCIES.length)];
+        return new Balance(amount, currency);
+    }
+
+    private static void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.out.println("FAILED: " + description);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A deferred version of a `map` chain like `accountId.map(findAccount).map(extractBalance).map(toDollars)`.
+ *
+ * A chain only records its stages: nothing runs until one of the terminal operations (`get`, `orElse`, `ifPresent`,
+ * `apply`) is called with an input. Stages are plain functions returning `null` for "no value", as in
+ * `alternativeSolutionNoOptional`, and evaluation stops at the first `null`, so the following stages are
+ * never called with it; `flatMap` adapts a stage returning an `Optional`, like the ones in
+ * `attemptedSolutionOptionalOutputOnly`. The terminal operations other than `apply` don't create any `Optional`.
+ *
+ * Chains are immutable: `map` and `flatMap` return a new chain, so a chain can be built once, at setup, and shared
+ * by all threads; evaluating it allocates nothing beyond what the stages themselves allocate.
+ */
+final class LazyChain<A, R> implements Function<A, Optional<R>> {
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final LazyChain<?, ?> IDENTITY = new LazyChain<>(new Function[0]);
+
+    private final Function<Object, Object>[] stages;
+
+    private LazyChain(Function<Object, Object>[] stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * The empty chain, which returns its input.
+     */
+    @SuppressWarnings("unchecked")
+    public static <A> LazyChain<A, A> identity() {
+        return (LazyChain<A, A>) IDENTITY;
+    }
+
+    public static <A, B> LazyChain<A, B> of(Function<? super A, ? extends B> stage) {
+        return LazyChain.<A>identity().map(stage);
+    }
+
+    /**
+     * @param stage Returns `null` for "no value"; it is never called with `null`.
+     */
+    @SuppressWarnings("unchecked")
+    public <S> LazyChain<A, S> map(Function<? super R, ? extends S> stage) {
+        Objects.requireNonNull(stage);
+        Function<Object, Object>[] next = Arrays.copyOf(stages, stages.length + 1);
+        next[stages.length] = (Function<Object, Object>) (Function<?, ?>) stage;
+        return new LazyChain<>(next);
+    }
+
+    /**
+     * @param stage Returns `Optional.empty()` for "no value"; it is never called with `null`.
+     */
+    public <S> LazyChain<A, S> flatMap(Function<? super R, Optional<S>> stage) {
+        Objects.requireNonNull(stage);
+        return map(value -> stage.apply(value).orElse(null));
+    }
+
+    public int length() {
+        return stages.length;
+    }
+
+    /**
+     * @throws NoSuchElementException If some stage has no value.
+     */
+    public R get(A input) {
+        R result = evaluate(input);
+        if (result == null) {
+            throw new NoSuchElementException("No value present");
+        }
+        return result;
+    }
+
+    public R orElse(A input, R other) {
+        R result = evaluate(input);
+        return result == null ? other : result;
+    }
+
+    public void ifPresent(A input, Consumer<? super R> consumer) {
+        R result = evaluate(input);
+        if (result != null) {
+            consumer.accept(result);
+        }
+    }
+
+    /**
+     * Evaluates the chain, wrapping the result; `optionalInput.flatMap(chain)` is the same as the `map` chain over
+     * `optionalInput`.
+     */
+    @Override
+    public Optional<R> apply(A input) {
+        return Optional.ofNullable(evaluate(input));
+    }
+
+    @SuppressWarnings("unchecked")
+    private R evaluate(A input) {
+        Object value = input;
+        for (Function<Object, Object> stage : stages) {
+            if (value == null) {
+                return null;
+            }
+            value = stage.apply(value);
+        }
+        return (R) value;
+    }
+}
@@ -0,0 +1,224 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * An open-addressing map from primitive `long` ids to `Account`s, meant to replace the `Map<Long, Account> bank`
+ * used in the examples when the number of accounts gets large.
+ * Keys are stored in a `long[]` and values in a parallel `Account[]`, so there is no boxing of the ids and no
+ * per-entry node: `get`, `containsKey` and `put` of an existing key never allocate.
+ *
+ * Just like a `HashMap`, this map tells apart an id that was never stored from an id explicitly associated to `null`
+ * (`bank.put(4L, null)` in the examples): `get` returns `null` for both, while `containsKey` only returns `true`
+ * for the latter. An account with a `null` balance (`bank.put(5L, new Account(2L, null))`) is just a regular value.
+ *
+ * This class is not thread-safe.
+ */
+class LongAccountMap {
+
+    /**
+     * Marker stored in place of `null` values, so that a `null` slot in `values` always means "free slot".
+     */
+    private static final Account NULL_ACCOUNT = new Account(null, null);
+
+    private static final int MIN_CAPACITY = 16;
+    // The largest power of two an array can hold, so the map holds at most half as many entries.
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private Account[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public LongAccountMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The number of entries the map should hold without resizing.
+     */
+    public LongAccountMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must be non-negative: " + expectedSize);
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    public static LongAccountMap of(Map<Long, Account> bank) {
+        LongAccountMap map = new LongAccountMap(bank.size());
+        bank.forEach(map::put);
+        return map;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The account associated to `id`, or `null` both when `id` is not in the map and when it is associated
+     * to `null`: use `containsKey` to tell the two cases apart.
+     */
+    public Account get(long id) {
+        Account value = values[slotOf(id)];
+        return value == NULL_ACCOUNT ? null : value;
+    }
+
+    public boolean containsKey(long id) {
+        return values[slotOf(id)] != null;
+    }
+
+    /**
+     * Associates `account` (possibly `null`) to `id`.
+     *
+     * @return The account previously associated to `id`, or `null` if there was none (or it was `null`).
+     * @throws IllegalStateException If `id` is new and the map already holds as many entries as it can; the map is
+     *                               left unchanged.
+     */
+    public Account put(long id, Account account) {
+        Account value = account == null ? NULL_ACCOUNT : account;
+        int slot = slotOf(id);
+        Account previous = values[slot];
+        if (previous == null && size >= resizeThreshold && keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Map full: can't hold more than " + resizeThreshold + " entries");
+        }
+        values[slot] = value;
+        if (previous == null) {
+            keys[slot] = id;
+            if (++size > resizeThreshold) {
+                allocateAndRehash(keys.length << 1);
+            }
+            return null;
+        }
+        return previous == NULL_ACCOUNT ? null : previous;
+    }
+
+    /**
+     * @return `true` if `id` was in the map (even if associated to `null`).
+     */
+    public boolean remove(long id) {
+        int slot = slotOf(id);
+        if (values[slot] == null) {
+            return false;
+        }
+        // Backward-shift deletion: move up any entry in the same probe run that would become unreachable.
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[free] = null;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Calls `visitor` once for each entry, in no particular order; `null` values are passed as `null`.
+     */
+    public void forEach(Visitor visitor) {
+        for (int slot = 0; slot < values.length; slot++) {
+            Account value = values[slot];
+            if (value != null) {
+                visitor.visit(keys[slot], value == NULL_ACCOUNT ? null : value);
+            }
+        }
+    }
+
+    /**
+     * Equivalent of the `findAccount` function in the examples, backed by this map.
+     */
+    public Function<Long, Optional<Account>> finder() {
+        return id -> id == null ? Optional.empty() : Optional.ofNullable(get(id));
+    }
+
+    /*
+     * Slot-level access, for scans that need to split the table into ranges (see `BankValuation`).
+     * Slots in `[0, capacity())` are either free or hold an entry; `valueAt` returns `null` for both free slots and
+     * entries associated to `null`.
+     */
+
+    int capacity() {
+        return values.length;
+    }
+
+    boolean isOccupied(int slot) {
+        return values[slot] != null;
+    }
+
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    Account valueAt(int slot) {
+        Account value = values[slot];
+        return value == NULL_ACCOUNT ? null : value;
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(long id, Account account);
+    }
+
+    /**
+     * @return The slot holding `id`, or the free slot where it would be inserted.
+     */
+    private int slotOf(long id) {
+        int slot = hash(id) & mask;
+        while (values[slot] != null && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        // Load factor 0.5 keeps linear probe runs short.
+        long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1L, (long) expectedSize * 2 - 1)) << 1);
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Too many entries: " + expectedSize);
+        }
+        return (int) capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Account[capacity];
+        mask = capacity - 1;
+        resizeThreshold = capacity >>> 1;
+    }
+
+    private void allocateAndRehash(int capacity) {
+        long[] oldKeys = keys;
+        Account[] oldValues = values;
+        allocate(capacity);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldValues[slot] != null) {
+                int target = slotOf(oldKeys[slot]);
+                keys[target] = oldKeys[slot];
+                values[target] = oldValues[slot];
+            }
+        }
+    }
+}
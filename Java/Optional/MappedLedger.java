@@ -0,0 +1,296 @@
+package com.sitepoint.optional.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * A read-only, memory-mapped ledger file holding a whole bank as fixed-size records.
+ *
+ * Opening a ledger only maps the file: no `Account` is created until it is looked up, so startup time doesn't depend
+ * on the size of the bank, and lookups read straight from the page cache. Records are sorted by id, and ids are
+ * found by binary search.
+ *
+ * File layout (little endian):
+ * - header, `HEADER_SIZE` bytes: magic number, format version, number of records;
+ * - records, `RECORD_SIZE` bytes each: the id the account is stored under, the account's own id, the amount in
+ *   minor units (see `CompactBalance`), the currency ordinal, and a byte of flags telling whether the account, its
+ *   id, its balance or the balance's amount are `null`.
+ *
+ * A `MappedByteBuffer` can't map more than 2GB, so the records are mapped in chunks of `2^CHUNK_SHIFT` records
+ * (1GB): a file holding more than that is mapped in several chunks.
+ */
+final class MappedLedger implements Closeable {
+
+    static final int MAGIC = 0x4C444752;  // "LDGR"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 32;
+
+    static final int KEY_OFFSET = 0;
+    static final int ACCOUNT_ID_OFFSET = 8;
+    static final int AMOUNT_OFFSET = 16;
+    static final int CURRENCY_OFFSET = 24;
+    static final int FLAGS_OFFSET = 25;
+
+    static final byte NULL_ACCOUNT = 1;
+    static final byte NULL_ACCOUNT_ID = 1 << 1;
+    static final byte NULL_BALANCE = 1 << 2;
+    static final byte NULL_AMOUNT = 1 << 3;
+
+    private static final int CHUNK_SHIFT = 25;  // 2^25 records of 32 bytes = 1GB per chunk
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private static final Currency[] CURRENCIES = Currency.values();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+
+    private MappedLedger(FileChannel channel, MappedByteBuffer[] chunks, long size) {
+        this.channel = channel;
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    /**
+     * Writes `bank` to `file`, replacing it atomically: the ledger is written to a temporary file first, and then
+     * moved in place.
+     */
+    public static void write(Path file, LongAccountMap bank) throws IOException {
+        long[] keys = new long[bank.size()];
+        int[] count = {0};
+        bank.forEach((id, account) -> keys[count[0]++] = id);
+        Arrays.sort(keys);
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 4096).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(keys.length);
+            for (long key : keys) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    drain(out, buffer);
+                }
+                writeRecord(buffer, key, bank.get(key));
+            }
+            drain(out, buffer);
+            out.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static MappedLedger open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends.
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a ledger file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported ledger version " + version + ": " + file);
+            }
+            long size = header.getLong();
+            // Compared by division, so that a corrupt size can't overflow the file length it implies
+            if (size < 0 || size > (channel.size() - HEADER_SIZE) / RECORD_SIZE) {
+                throw new IOException("Truncated ledger file: " + file);
+            }
+
+            int chunkCount = (int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT);
+            MappedByteBuffer[] chunks = new MappedByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long first = (long) i << CHUNK_SHIFT;
+                long records = Math.min(size - first, 1L << CHUNK_SHIFT);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE,
+                        records * RECORD_SIZE);
+                chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedLedger(channel, chunks, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The index of the record for `id`, or `-1` if there is none.
+     */
+    public long indexOf(long id) {
+        long low = 0;
+        long high = size - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long key = keyAt(middle);
+            if (key < id) {
+                low = middle + 1;
+            } else if (key > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public boolean containsKey(long id) {
+        return indexOf(id) >= 0;
+    }
+
+    /**
+     * Same contract as the `findAccount` functions in the examples: empty both if `id` is not in the ledger and if it
+     * is associated to a `null` account.
+     */
+    public Optional<Account> find(long id) {
+        long index = indexOf(id);
+        return index < 0 ? Optional.empty() : Optional.ofNullable(accountAt(index));
+    }
+
+    public Function<Long, Optional<Account>> finder() {
+        return id -> id == null ? Optional.empty() : find(id);
+    }
+
+    public long keyAt(long index) {
+        return chunk(index).getLong(offset(index) + KEY_OFFSET);
+    }
+
+    public byte flagsAt(long index) {
+        return chunk(index).get(offset(index) + FLAGS_OFFSET);
+    }
+
+    /**
+     * @return The amount of the record's balance, in minor units, or `CompactBalance.NO_AMOUNT` if the account, its
+     * balance or the amount is `null`.
+     */
+    public long amountMinorUnitsAt(long index) {
+        if ((flagsAt(index) & (NULL_ACCOUNT | NULL_BALANCE | NULL_AMOUNT)) != 0) {
+            return CompactBalance.NO_AMOUNT;
+        }
+        return chunk(index).getLong(offset(index) + AMOUNT_OFFSET);
+    }
+
+    /**
+     * @return The currency ordinal of the record's balance, or `CompactBalance.NO_CURRENCY`.
+     */
+    public byte currencyAt(long index) {
+        return chunk(index).get(offset(index) + CURRENCY_OFFSET);
+    }
+
+    /**
+     * Materializes the account stored at `index`.
+     */
+    public Account accountAt(long index) {
+        return readRecord(chunk(index), offset(index));
+    }
+
+    /**
+     * Materializes the account of the record starting at `offset` in `chunk`, as written by `writeRecord`.
+     */
+    static Account readRecord(ByteBuffer chunk, int offset) {
+        byte flags = chunk.get(offset + FLAGS_OFFSET);
+        if ((flags & NULL_ACCOUNT) != 0) {
+            return null;
+        }
+        Long accountId = (flags & NULL_ACCOUNT_ID) != 0 ? null : chunk.getLong(offset + ACCOUNT_ID_OFFSET);
+        if ((flags & NULL_BALANCE) != 0) {
+            return new Account(accountId, null);
+        }
+        Double amount = (flags & NULL_AMOUNT) != 0
+                ? null
+                : CompactBalance.toAmount(chunk.getLong(offset + AMOUNT_OFFSET));
+        byte currency = chunk.get(offset + CURRENCY_OFFSET);
+        return new Account(accountId, new Balance(amount,
+                currency == CompactBalance.NO_CURRENCY ? null : CURRENCIES[currency]));
+    }
+
+    /**
+     * Loads the whole ledger into an in-memory map.
+     */
+    public LongAccountMap toAccountMap() {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Ledger too large for an in-memory map: " + size);
+        }
+        LongAccountMap bank = new LongAccountMap((int) size);
+        for (long i = 0; i < size; i++) {
+            bank.put(keyAt(i), accountAt(i));
+        }
+        return bank;
+    }
+
+    /**
+     * Closes the underlying file. The mapped memory is released when the buffers are garbage collected, so the
+     * ledger must not be used after closing it.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static void writeRecord(ByteBuffer buffer, long key, Account account) {
+        int start = buffer.position();
+        byte flags = 0;
+        long accountId = 0;
+        long amount = 0;
+        byte currency = CompactBalance.NO_CURRENCY;
+        if (account == null) {
+            flags |= NULL_ACCOUNT;
+        } else {
+            if (account.getId() == null) {
+                flags |= NULL_ACCOUNT_ID;
+            } else {
+                accountId = account.getId();
+            }
+            Balance balance = account.getBalance();
+            if (balance == null) {
+                flags |= NULL_BALANCE;
+            } else {
+                if (balance.getAmount() == null) {
+                    flags |= NULL_AMOUNT;
+                } else {
+                    amount = CompactBalance.toMinorUnits(balance.getAmount());
+                }
+                currency = CompactBalance.toOrdinal(balance.getCurrency());
+            }
+        }
+        buffer.putLong(key).putLong(accountId).putLong(amount).put(currency).put(flags);
+        while (buffer.position() < start + RECORD_SIZE) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private MappedByteBuffer chunk(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Record " + index + " out of " + size);
+        }
+        return chunks[(int) (index >>> CHUNK_SHIFT)];
+    }
+
+    private static int offset(long index) {
+        return (int) (index & CHUNK_MASK) * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,186 @@
+package com.sitepoint.optional.example;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Checks the monad laws on every `CompositionStrategy`, over random banks and ids, and measures what each form
+ * costs as the bank grows.
+ *
+ * Each trial generates a bank with random fractions of `null` accounts and `null` balances, and random ids, a random
+ * fraction of which are not in the bank and a few of which are empty. For each strategy and id it checks:
+ * - associativity: `chained` (one function at a time) must give the same outcome as `composed` (the functions
+ *   composed first);
+ * - left identity: wrapping a bare id with `Optional.ofNullable` and evaluating it, `chained` or `composed`, must
+ *   give the same outcome as `applied` (the composed function applied to the bare id).
+ * An outcome is either the result or the class of the exception thrown, so a form that throws where the other
+ * returns a value breaks the law. The first counterexample of each law is printed for every strategy.
+ *
+ * Then, on the same ids, it measures the average cost of each form in nanoseconds per evaluation, exceptions
+ * included.
+ *
+ * Run with `java com.sitepoint.optional.example.MonadLawChecker [sizes] [trials] [idsPerTrial]`, where sizes is a
+ * comma-separated list, e.g. `1000,100000,1000000 5 100000`.
+ */
+public class MonadLawChecker {
+
+    private static final double EMPTY_ID_RATIO = 0.02;
+    private static final int TIMING_ROUNDS = 3;
+
+    private static Object sink;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? parseInts(args[0]) : new int[]{1_000, 100_000, 1_000_000};
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int idsPerTrial = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        CompositionStrategy[] strategies = CompositionStrategy.values();
+        String[][] counterexamples = new String[strategies.length][Law.values().length];
+
+        System.out.printf("%-42s %9s %9s %9s %9s %9s %10s %10s %10s%n", "strategy", "size", "checks",
+                "assoc", "left-ch", "left-co", "chained ns", "composed", "applied");
+        for (int size : sizes) {
+            Random random = new Random(size);
+            long[][] violations = new long[strategies.length][Law.values().length];
+            double[][] nanos = new double[strategies.length][Form.values().length];
+            long checks = 0;
+            for (int trial = 0; trial < trials; trial++) {
+                double nullAccountRatio = random.nextDouble() * 0.3;
+                double nullBalanceRatio = random.nextDouble() * 0.3;
+                double hitRatio = 0.5 + random.nextDouble() * 0.5;
+                Map<Long, Account> bank = RandomBank.generate(random, size, nullAccountRatio, nullBalanceRatio);
+                Optional<Long>[] ids = RandomBank.optionalIds(random,
+                        RandomBank.ids(random, idsPerTrial, size, hitRatio), EMPTY_ID_RATIO);
+                checks += ids.length;
+
+                for (int s = 0; s < strategies.length; s++) {
+                    CompositionStrategy.Evaluator evaluator = strategies[s].bind(bank);
+                    for (Optional<Long> accountId : ids) {
+                        Long id = accountId.orElse(null);
+                        Object chained = outcome(evaluator, Form.CHAINED, accountId);
+                        Object composed = outcome(evaluator, Form.COMPOSED, accountId);
+                        Object applied = outcome(evaluator, Form.APPLIED, accountId);
+                        check(violations[s], counterexamples[s], Law.ASSOCIATIVITY, chained, composed, id, bank);
+                        check(violations[s], counterexamples[s], Law.LEFT_IDENTITY_CHAINED, chained, applied, id, bank);
+                        check(violations[s], counterexamples[s], Law.LEFT_IDENTITY_COMPOSED, composed, applied, id,
+                                bank);
+                    }
+                    for (Form form : Form.values()) {
+                        nanos[s][form.ordinal()] += time(evaluator, form, ids) / trials;
+                    }
+                }
+            }
+            for (int s = 0; s < strategies.length; s++) {
+                System.out.printf("%-42s %9d %9d %9d %9d %9d %10.1f %10.1f %10.1f%n", strategies[s], size, checks,
+                        violations[s][Law.ASSOCIATIVITY.ordinal()],
+                        violations[s][Law.LEFT_IDENTITY_CHAINED.ordinal()],
+                        violations[s][Law.LEFT_IDENTITY_COMPOSED.ordinal()],
+                        nanos[s][Form.CHAINED.ordinal()], nanos[s][Form.COMPOSED.ordinal()],
+                        nanos[s][Form.APPLIED.ordinal()]);
+            }
+        }
+
+        System.out.println();
+        for (int s = 0; s < strategies.length; s++) {
+            for (Law law : Law.values()) {
+                String counterexample = counterexamples[s][law.ordinal()];
+                System.out.printf("%-42s %-24s %s%n", strategies[s], law,
+                        counterexample == null ? "holds" : "broken: " + counterexample);
+            }
+        }
+    }
+
+    private enum Law {
+        ASSOCIATIVITY, LEFT_IDENTITY_CHAINED, LEFT_IDENTITY_COMPOSED
+    }
+
+    private enum Form {
+        CHAINED, COMPOSED, APPLIED
+    }
+
+    /**
+     * Evaluates the bare id with `applied`, and its `Optional.ofNullable` wrapping with the other forms.
+     */
+    private static Optional<Double> evaluate(CompositionStrategy.Evaluator evaluator, Form form,
+                                             Optional<Long> accountId) {
+        switch (form) {
+            case CHAINED:
+                return evaluator.chained(accountId);
+            case COMPOSED:
+                return evaluator.composed(accountId);
+            default:
+                return evaluator.applied(accountId.orElse(null));
+        }
+    }
+
+    /**
+     * @return The result of the evaluation, or the class of the exception it threw.
+     */
+    private static Object outcome(CompositionStrategy.Evaluator evaluator, Form form, Optional<Long> accountId) {
+        try {
+            return evaluate(evaluator, form, accountId);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    private static void check(long[] violations, String[] counterexamples, Law law, Object left, Object right,
+                              Long id, Map<Long, Account> bank) {
+        if (Objects.equals(left, right)) {
+            return;
+        }
+        violations[law.ordinal()]++;
+        if (counterexamples[law.ordinal()] == null) {
+            counterexamples[law.ordinal()] = "id " + id + " (" + describe(id, bank) + "): " + format(left)
+                    + " vs " + format(right);
+        }
+    }
+
+    private static String describe(Long id, Map<Long, Account> bank) {
+        if (id == null) {
+            return "empty id";
+        }
+        if (!bank.containsKey(id)) {
+            return "missing";
+        }
+        Account account = bank.get(id);
+        if (account == null) {
+            return "null account";
+        }
+        return account.getBalance() == null ? "null balance" : "balance";
+    }
+
+    private static String format(Object outcome) {
+        return outcome instanceof Class ? "throws " + ((Class<?>) outcome).getSimpleName() : String.valueOf(outcome);
+    }
+
+    /**
+     * @return The best average time of an evaluation, in nanoseconds, over a few rounds.
+     */
+    private static double time(CompositionStrategy.Evaluator evaluator, Form form, Optional<Long>[] ids) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < TIMING_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (Optional<Long> accountId : ids) {
+                try {
+                    sink = evaluate(evaluator, form, accountId);
+                } catch (RuntimeException e) {
+                    sink = e;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / ids.length;
+    }
+
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,96 @@
+package com.sitepoint.optional.example;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * A fused version of a `flatMap` chain like `findAccount.apply(id).flatMap(extractBalance).flatMap(toDollars)`.
+ *
+ * The stages are the same `Function<A, Optional<B>>` used in `attemptedSolutionOptionalOutputOnly`, but instead of
+ * going through `Optional::flatMap` (and a capturing lambda, when composing) at every hop, `apply` runs them in a
+ * single loop that stops at the first empty result. The only `Optional`s created are the ones returned by the
+ * stages themselves: the result of the last stage is returned as it is.
+ *
+ * Pipelines are immutable: `then` returns a new pipeline, so a pipeline can be built once and shared.
+ * Since stages are kept in a flat array, `a.then(b).then(c)` and `a.then(b.then(c))` hold exactly the same stages
+ * (associativity), and `identity().then(f)` is indistinguishable from `f` (left identity).
+ */
+final class OptionalPipeline<A, R> implements Function<A, Optional<R>> {
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final OptionalPipeline<?, ?> IDENTITY = new OptionalPipeline<>(new Function[0]);
+
+    private final Function<Object, Optional<?>>[] stages;
+
+    private OptionalPipeline(Function<Object, Optional<?>>[] stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * The empty pipeline: `identity().apply(a)` is `Optional.ofNullable(a)`.
+     */
+    @SuppressWarnings("unchecked")
+    public static <A> OptionalPipeline<A, A> identity() {
+        return (OptionalPipeline<A, A>) IDENTITY;
+    }
+
+    public static <A, B> OptionalPipeline<A, B> of(Function<? super A, Optional<B>> stage) {
+        return OptionalPipeline.<A>identity().then(stage);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <S> OptionalPipeline<A, S> then(Function<? super R, Optional<S>> stage) {
+        Objects.requireNonNull(stage);
+        if (stage instanceof OptionalPipeline) {
+            return then((OptionalPipeline<R, S>) stage);
+        }
+        Function<Object, Optional<?>>[] next = Arrays.copyOf(stages, stages.length + 1);
+        next[stages.length] = (Function<Object, Optional<?>>) (Function<?, ?>) stage;
+        return new OptionalPipeline<>(next);
+    }
+
+    public <S> OptionalPipeline<A, S> then(OptionalPipeline<R, S> other) {
+        Function<Object, Optional<?>>[] next = Arrays.copyOf(stages, stages.length + other.stages.length);
+        System.arraycopy(other.stages, 0, next, stages.length, other.stages.length);
+        return new OptionalPipeline<>(next);
+    }
+
+    public int length() {
+        return stages.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<R> apply(A input) {
+        if (stages.length == 0) {
+            return Optional.ofNullable((R) input);
+        }
+        Optional<?> result = stages[0].apply(input);
+        for (int i = 1; i < stages.length && result.isPresent(); i++) {
+            result = stages[i].apply(result.get());
+        }
+        return (Optional<R>) result;
+    }
+
+    /**
+     * Evaluates `input` through `Optional::flatMap`, one stage at a time: this is the reference semantics `apply`
+     * must match.
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<R> applyChained(Optional<A> input) {
+        Optional<?> result = input;
+        for (Function<Object, Optional<?>> stage : stages) {
+            result = result.flatMap(stage);
+        }
+        return (Optional<R>) result;
+    }
+
+    /**
+     * @return `true` if `input.flatMap(this)` equals the stage-by-stage `flatMap` chain over `input`.
+     */
+    public boolean agreesWithChain(Optional<A> input) {
+        return input.flatMap(this).equals(applyChained(input));
+    }
+}
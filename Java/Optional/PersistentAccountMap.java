@@ -0,0 +1,233 @@
+package com.sitepoint.optional.example;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * An immutable map from `long` ids to `Account`s, implemented as a hash array mapped trie (HAMT).
+ *
+ * `put` and `remove` don't modify the map: they return a new map that shares all of its structure with the old one
+ * except for the path from the root to the changed entry (at most 13 small nodes). Holding on to a map is therefore
+ * an O(1) snapshot of the bank: it can be iterated at leisure while newer versions are created, and the nodes only
+ * it uses are reclaimed by the garbage collector as soon as nobody references it. See `VersionedBank`.
+ *
+ * As in `LongAccountMap`, an id associated to `null` is different from an id not in the map.
+ * Ids are scrambled by a bijective hash function, so two different ids never collide.
+ */
+final class PersistentAccountMap {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentAccountMap EMPTY = new PersistentAccountMap(new Node(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentAccountMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static PersistentAccountMap empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The account associated to `id`, or `null` both when `id` is not in the map and when it is associated
+     * to `null`: use `containsKey` to tell the two cases apart.
+     */
+    public Account get(long id) {
+        Leaf leaf = find(id);
+        return leaf == null ? null : leaf.value;
+    }
+
+    public boolean containsKey(long id) {
+        return find(id) != null;
+    }
+
+    public PersistentAccountMap put(long id, Account account) {
+        Leaf leaf = new Leaf(id, hash(id), account);
+        boolean[] added = {false};
+        Node newRoot = root.put(leaf, 0, added);
+        return newRoot == root ? this : new PersistentAccountMap(newRoot, added[0] ? size + 1 : size);
+    }
+
+    public PersistentAccountMap remove(long id) {
+        Node newRoot = root.remove(id, hash(id), 0);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentAccountMap(newRoot == null ? EMPTY.root : newRoot, size - 1);
+    }
+
+    public void forEach(LongAccountMap.Visitor visitor) {
+        root.forEach(visitor);
+    }
+
+    /**
+     * Equivalent of the `findAccount` function in the examples, backed by this version of the map.
+     */
+    public Function<Long, Optional<Account>> finder() {
+        return id -> id == null ? Optional.empty() : Optional.ofNullable(get(id));
+    }
+
+    private Leaf find(long id) {
+        long hash = hash(id);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.key == id ? leaf : null;
+            }
+            node = (Node) slot;
+        }
+    }
+
+    /**
+     * MurmurHash3's 64-bit finalizer: a bijection, so distinct ids always have distinct hashes.
+     */
+    private static long hash(long id) {
+        long h = id;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Leaf {
+        final long key;
+        final long hash;
+        final Account value;
+
+        Leaf(long key, long hash, Account value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * An inner node: `slots` holds, in order, one `Leaf` or child `Node` for each bit set in `bitmap`.
+     */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        Node put(Leaf leaf, int shift, boolean[] added) {
+            int bit = 1 << ((leaf.hash >>> shift) & MASK);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = leaf;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                added[0] = true;
+                return new Node(bitmap | bit, newSlots);
+            }
+            Object slot = slots[index];
+            Object newSlot;
+            if (slot instanceof Leaf) {
+                Leaf existing = (Leaf) slot;
+                if (existing.key == leaf.key) {
+                    if (existing.value == leaf.value) {
+                        return this;
+                    }
+                    newSlot = leaf;
+                } else {
+                    newSlot = merge(existing, leaf, shift + BITS);
+                    added[0] = true;
+                }
+            } else {
+                Node child = (Node) slot;
+                newSlot = child.put(leaf, shift + BITS, added);
+                if (newSlot == child) {
+                    return this;
+                }
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+            return new Node(bitmap, newSlots);
+        }
+
+        /**
+         * @return The node without `key`: `this` if `key` is not in it, `null` if the node would be empty.
+         */
+        Node remove(long key, long hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            Object slot = slots[index];
+            if (slot instanceof Leaf) {
+                if (((Leaf) slot).key != key) {
+                    return this;
+                }
+                return without(bit, index);
+            }
+            Node child = (Node) slot;
+            Node newChild = child.remove(key, hash, shift + BITS);
+            if (newChild == child) {
+                return this;
+            }
+            if (newChild == null) {
+                return without(bit, index);
+            }
+            Object[] newSlots = slots.clone();
+            // A child left with a single leaf is replaced by the leaf, so that the trie stays as shallow as possible.
+            newSlots[index] = newChild.slots.length == 1 && newChild.slots[0] instanceof Leaf ? newChild.slots[0] : newChild;
+            return new Node(bitmap, newSlots);
+        }
+
+        void forEach(LongAccountMap.Visitor visitor) {
+            for (Object slot : slots) {
+                if (slot instanceof Leaf) {
+                    Leaf leaf = (Leaf) slot;
+                    visitor.visit(leaf.key, leaf.value);
+                } else {
+                    ((Node) slot).forEach(visitor);
+                }
+            }
+        }
+
+        private Node without(int bit, int index) {
+            if (slots.length == 1) {
+                return null;
+            }
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+            return new Node(bitmap & ~bit, newSlots);
+        }
+
+        private static Node merge(Leaf a, Leaf b, int shift) {
+            int indexA = (int) (a.hash >>> shift) & MASK;
+            int indexB = (int) (b.hash >>> shift) & MASK;
+            if (indexA == indexB) {
+                return new Node(1 << indexA, new Object[]{merge(a, b, shift + BITS)});
+            }
+            return new Node((1 << indexA) | (1 << indexB), indexA < indexB ? new Object[]{a, b} : new Object[]{b, a});
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.sitepoint.optional.example;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * Generates random banks and account ids, reproducing at scale the cases set up in the examples: accounts with a
+ * balance, ids associated to `null` (`bank.put(4L, null)`), accounts with a `null` balance
+ * (`bank.put(5L, new Account(2L, null))`), ids not in the bank, and empty ids (`Optional.ofNullable(null)`).
+ *
+ * Ids `[0, size)` are in the bank; missing ids are drawn from `[size, 2 * size)`.
+ */
+final class RandomBank {
+
+    private static final Currency[] CURRENCIES = Currency.values();
+    // Random amounts are whole cents from 0 up to, but excluding, 100,000.
+    private static final int MAX_AMOUNT_CENTS = 100_000 * CompactBalance.MINOR_UNITS_PER_UNIT;
+
+    private RandomBank() {
+    }
+
+    /**
+     * @param nullAccountRatio Fraction of the ids associated to a `null` account.
+     * @param nullBalanceRatio Fraction of the ids associated to an account with a `null` balance.
+     */
+    public static Map<Long, Account> generate(Random random, int size, double nullAccountRatio, double nullBalanceRatio) {
+        Map<Long, Account> bank = new HashMap<>(size * 2);
+        for (long id = 0; id < size; id++) {
+            double p = random.nextDouble();
+            if (p < nullAccountRatio) {
+                bank.put(id, null);
+            } else if (p < nullAccountRatio + nullBalanceRatio) {
+                bank.put(id, new Account(id, null));
+            } else {
+                bank.put(id, new Account(id, randomBalance(random)));
+            }
+        }
+        return bank;
+    }
+
+    public static Balance randomBalance(Random random) {
+        double amount = random.nextInt(MAX_AMOUNT_CENTS) / (double) CompactBalance.MINOR_UNITS_PER_UNIT;
+        return new Balance(amount, CURRENCIES[random.nextInt(CURRENCIES.length)]);
+    }
+
+    /**
+     * @param hitRatio Fraction of the ids that are in the bank.
+     */
+    public static long[] ids(Random random, int count, int bankSize, double hitRatio) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            int offset = random.nextDouble() < hitRatio ? 0 : bankSize;
+            ids[i] = offset + random.nextInt(Math.max(1, bankSize));
+        }
+        return ids;
+    }
+
+    /**
+     * Wraps `ids` into `Optional`s, replacing a fraction `emptyRatio` of them with `Optional.empty()`.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public static Optional<Long>[] optionalIds(Random random, long[] ids, double emptyRatio) {
+        Optional<Long>[] optionalIds = new Optional[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            optionalIds[i] = random.nextDouble() < emptyRatio ? Optional.empty() : Optional.of(ids[i]);
+        }
+        return optionalIds;
+    }
+}
@@ -0,0 +1,66 @@
+package com.sitepoint.optional.example;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Measures the time to the first valuation of a freshly started JVM, for short-lived jobs.
+ *
+ * In `inline` mode, the first valuation is done as in the examples of `Test`: building the bank, the lambdas of the
+ * chain and the ids in place; in `bootstrap` mode it goes through `BankBootstrap`. Both report the time from the
+ * start of `main` and from the start of the JVM, which includes class loading and so is the one a class-data-sharing
+ * archive improves: `cds.sh` runs both modes with and without an archive.
+ *
+ * Run with `java com.sitepoint.optional.example.StartupBenchmark [inline|bootstrap]`.
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        String mode = args.length > 0 ? args[0] : "bootstrap";
+        Optional<Double> value;
+        if ("inline".equals(mode)) {
+            value = valueInline();
+        } else if ("bootstrap".equals(mode)) {
+            value = BankBootstrap.value(BankBootstrap.accountIds().get(0));
+        } else {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        long end = System.nanoTime();
+        long endMillis = System.currentTimeMillis();
+
+        // Read only after the measurement, so that loading the management classes doesn't count
+        long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.printf("mode=%s main-to-first-valuation=%.1fus jvm-start-to-first-valuation=%dms value=%s%n",
+                mode, (end - start) / 1e3, endMillis - jvmStartMillis, value);
+    }
+
+    private static Optional<Double> valueInline() {
+        Map<Long, Account> bank = new HashMap<>();
+        Function<Long, Optional<Account>> findAccount = id -> Optional.ofNullable(bank.get(id));
+        Function<Account, Optional<Balance>> extractBalance = account -> Optional.ofNullable(account.getBalance());
+        Function<Balance, Optional<Double>> toDollars = balance -> {
+            switch (balance.getCurrency()) {
+                case DOLLAR:
+                    return Optional.ofNullable(balance.getAmount());
+                case POUND:
+                    return Optional.ofNullable(balance.getAmount() * ExchangeRates.dollarRates().rate(Currency.POUND));
+                case EURO:
+                    return Optional.ofNullable(balance.getAmount() * ExchangeRates.dollarRates().rate(Currency.EURO));
+                default:
+                    return Optional.ofNullable(0.);
+            }
+        };
+
+        Optional<Long> accountId1 = Optional.of(1L);
+
+        bank.put(1L, new Account(1L, new Balance(100., Currency.EURO)));
+        bank.put(4L, null);
+        bank.put(5L, new Account(2L, null));
+
+        return accountId1.flatMap(findAccount).flatMap(extractBalance).flatMap(toDollars);
+    }
+}
@@ -7,6 +7,8 @@ import java.util.function.Function;
 
 public class Test {
 
+    private static final ExchangeRates RATES = ExchangeRates.dollarRates();
+
     public static void main(String[] args) {
         misbehaving();
         attemptedSolution();
@@ -15,6 +17,8 @@ public class Test {
         alternativeNonSolutionNoOptional();
         alternativeSolutionOptionalOutputOnly();
         alternativeSolutionOptionalInputOnly();
+        fusedSolutionOptionalOutputOnly();
+        lazySolution();
     }
 
     public static void misbehaving() {
@@ -28,8 +32,8 @@ public class Test {
             }
             switch (balance.getCurrency()) {
                 case DOLLAR: return balance.getAmount();
-                case POUND: return balance.getAmount() * 1.3;
-                case EURO: return balance.getAmount() * 1.1;
+                case POUND: return balance.getAmount() * RATES.rate(Currency.POUND);
+                case EURO: return balance.getAmount() * RATES.rate(Currency.EURO);
                 default: return 0.;
             }
         };
@@ -90,9 +94,9 @@ public class Test {
                     case DOLLAR:
                         return balance.getAmount();
                     case POUND:
-                        return balance.getAmount() * 1.3;
+                        return balance.getAmount() * RATES.rate(Currency.POUND);
                     case EURO:
-                        return balance.getAmount() * 1.1;
+                        return balance.getAmount() * RATES.rate(Currency.EURO);
                     default:
                         return 0.;
                 }
@@ -156,9 +160,9 @@ public class Test {
                 case DOLLAR:
                     return balance.getAmount();
                 case POUND:
-                    return balance.getAmount() * 1.3;
+                    return balance.getAmount() * RATES.rate(Currency.POUND);
                 case EURO:
-                    return balance.getAmount() * 1.1;
+                    return balance.getAmount() * RATES.rate(Currency.EURO);
                 default:
                     return 0.;
             }
@@ -218,9 +222,9 @@ public class Test {
                     case DOLLAR:
                         return balance.getAmount();
                     case POUND:
-                        return balance.getAmount() * 1.3;
+                        return balance.getAmount() * RATES.rate(Currency.POUND);
                     case EURO:
-                        return balance.getAmount() * 1.1;
+                        return balance.getAmount() * RATES.rate(Currency.EURO);
                     default:
                         return 0.;
                 }
@@ -288,9 +292,9 @@ public class Test {
                 case DOLLAR:
                     return Optional.ofNullable(balance.getAmount());
                 case POUND:
-                    return Optional.ofNullable(balance.getAmount() * 1.3);
+                    return Optional.ofNullable(balance.getAmount() * RATES.rate(Currency.POUND));
                 case EURO:
-                    return Optional.ofNullable(balance.getAmount() * 1.1);
+                    return Optional.ofNullable(balance.getAmount() * RATES.rate(Currency.EURO));
                 default:
                     return Optional.ofNullable(0.);
             }
@@ -411,9 +415,9 @@ public class Test {
                 case DOLLAR:
                     return Optional.ofNullable(balance.getAmount());
                 case POUND:
-                    return Optional.ofNullable(balance.getAmount() * 1.3);
+                    return Optional.ofNullable(balance.getAmount() * RATES.rate(Currency.POUND));
                 case EURO:
-                    return Optional.ofNullable(balance.getAmount() * 1.1);
+                    return Optional.ofNullable(balance.getAmount() * RATES.rate(Currency.EURO));
                 default:
                     return Optional.ofNullable(0.);
             }
@@ -484,9 +488,9 @@ public class Test {
                     case DOLLAR:
                         return balance.getAmount();
                     case POUND:
-                        return balance.getAmount() * 1.3;
+                        return balance.getAmount() * RATES.rate(Currency.POUND);
                     case EURO:
-                        return balance.getAmount() * 1.1;
+                        return balance.getAmount() * RATES.rate(Currency.EURO);
                     default:
                         return 0.;
                 }
@@ -529,48 +533,131 @@ public class Test {
         System.out.println(accountId5.map(findAccount.andThen(Optional::ofNullable).andThen(extractBalance).andThen(Optional::ofNullable).andThen(toDollarsOpt)));  // 0.0
     }
 
-    private static class Account {
-        private Long id;
-        Balance balance;
+    /**
+     * The same functions as in `attemptedSolutionOptionalOutputOnly`, fused into a single `OptionalPipeline`.
+     * The pipeline runs the stages in a loop instead of going through a `flatMap` per stage, but it must give exactly
+     * the same results as the chain: for each account we print the chained result, the fused result, and whether they
+     * agree.
+     */
+    public static void fusedSolutionOptionalOutputOnly() {
+        Map<Long, Account> bank = new HashMap<>();
+        Function<Long, Optional<Account>> findAccount = id -> Optional.ofNullable(bank.get(id));
 
-        public Account(Long id, Balance balance) {
-            this.id = id;
-            this.balance = balance;
-        }
+        Function<Account, Optional<Balance>> extractBalance = account -> Optional.ofNullable(account.getBalance());
 
-        public Long getId() {
-            return id;
-        }
+        Function<Balance, Optional<Double>> toDollars = balance -> {
+            switch (balance.getCurrency()){
+                case DOLLAR:
+                    return Optional.ofNullable(balance.getAmount());
+                case POUND:
+                    return Optional.ofNullable(balance.getAmount() * RATES.rate(Currency.POUND));
+                case EURO:
+                    return Optional.ofNullable(balance.getAmount() * RATES.rate(Currency.EURO));
+                default:
+                    return Optional.ofNullable(0.);
+            }
+        };
 
-        public Balance getBalance() {
-            return balance;
-        }
-    }
+        OptionalPipeline<Long, Double> pipeline = OptionalPipeline.of(findAccount).then(extractBalance).then(toDollars);
+
+        Optional<Long> accountId1 = Optional.of(1L);
+        Optional<Long> accountId2 = Optional.ofNullable(null);
+        Optional<Long> accountId3 = Optional.of(3L);
+        Optional<Long> accountId4 = Optional.of(4L);
+        Optional<Long> accountId5 = Optional.of(5L);
+
+        bank.put(1L, new Account(1L, new Balance(100., Currency.EURO)));
+        bank.put(4L, null);
+        bank.put(5L, new Account(2L, null));
+
+        System.out.println("****************************************************************************");
+        System.out.println("Example 8 - Fused pipeline: Optional as a return type only\n");
+
+        System.out.println("Account 1");  // An account properly stored with a non-null balance
+        System.out.println(accountId1.flatMap(findAccount).flatMap(extractBalance).flatMap(toDollars));  // 110.0
+        System.out.println(accountId1.flatMap(pipeline));  // 110.0
+        System.out.println(pipeline.agreesWithChain(accountId1));  // true
+
+        System.out.println("Account 2");  // id == null => Optional.empty
+        System.out.println(accountId2.flatMap(findAccount).flatMap(extractBalance).flatMap(toDollars));  // Optional.empty
+        System.out.println(accountId2.flatMap(pipeline));  // Optional.empty
+        System.out.println(pipeline.agreesWithChain(accountId2));  // true
+
+        System.out.println("Account 3");  // Id not in map => findAccount returns Optional.empty
+        System.out.println(accountId3.flatMap(findAccount).flatMap(extractBalance).flatMap(toDollars));  // Optional.empty
+        System.out.println(accountId3.flatMap(pipeline));  // Optional.empty
+        System.out.println(pipeline.agreesWithChain(accountId3));  // true
 
-    private enum Currency {
-        DOLLAR, POUND, EURO
+        System.out.println("Account 4");  //Id associated to null in the map
+        System.out.println(accountId4.flatMap(findAccount).flatMap(extractBalance).flatMap(toDollars));  // Optional.empty
+        System.out.println(accountId4.flatMap(pipeline));  // Optional.empty
+        System.out.println(pipeline.agreesWithChain(accountId4));  // true
+
+        System.out.println("Account 5");  // Account's balance is null
+        System.out.println(accountId5.flatMap(findAccount).flatMap(extractBalance).flatMap(toDollars));  // Optional.empty
+        System.out.println(accountId5.flatMap(pipeline));  // Optional.empty
+        System.out.println(pipeline.agreesWithChain(accountId5));  // true
     }
 
-    private static class Balance {
-        private Double amount;
-        private Currency currency;
+    /**
+     * The functions of `alternativeSolutionNoOptional`, returning `null` for "no value", recorded once in a
+     * `LazyChain`. Nothing runs until a terminal operation is called with an id, and evaluation stops at the first
+     * `null`: for each account we print the chain applied with `flatMap`, and `orElse` with a default of 0; for
+     * accounts 1 and 5, `ifPresent` prints the value only if there is one.
+     */
+    public static void lazySolution() {
+        Map<Long, Account> bank = new HashMap<>();
+
+        Function<Balance, Double> toDollars = balance -> {
+            switch (balance.getCurrency()){
+                case DOLLAR:
+                    return balance.getAmount();
+                case POUND:
+                    return balance.getAmount() * RATES.rate(Currency.POUND);
+                case EURO:
+                    return balance.getAmount() * RATES.rate(Currency.EURO);
+                default:
+                    return 0.;
+            }
+        };
+
+        // Built once: no stage runs until a terminal operation is called
+        LazyChain<Long, Double> chain = LazyChain.<Long, Account>of(bank::get).map(Account::getBalance).map(toDollars);
+
+        Optional<Long> accountId1 = Optional.of(1L);
+        Optional<Long> accountId2 = Optional.ofNullable(null);
+        Optional<Long> accountId3 = Optional.of(3L);
+        Optional<Long> accountId4 = Optional.of(4L);
+        Optional<Long> accountId5 = Optional.of(5L);
+
+        bank.put(1L, new Account(1L, new Balance(100., Currency.EURO)));
+        bank.put(4L, null);
+        bank.put(5L, new Account(2L, null));
 
-        public Balance(Double amount, Currency currency) {
-            this.amount = amount;
-            this.currency = currency;
-        }
+        System.out.println("****************************************************************************");
+        System.out.println("Example 9 - Lazy chain: stops at the first null\n");
 
-        public Balance(Double amount) {
-            this(amount, Currency.DOLLAR);
-        }
+        System.out.println("Account 1");  // An account properly stored with a non-null balance
+        System.out.println(accountId1.flatMap(chain));  // 110.0
+        System.out.println(chain.orElse(1L, 0.));  // 110.0
+        chain.ifPresent(1L, System.out::println);  // 110.0
 
-        public Double getAmount() {
-            return amount;
-        }
+        System.out.println("Account 2");  // id == null => Optional.empty
+        System.out.println(accountId2.flatMap(chain));  // Optional.empty
+        System.out.println(chain.orElse(null, 0.));  // 0.0
+
+        System.out.println("Account 3");  // Id not in map => bank.get returns null, the other stages don't run
+        System.out.println(accountId3.flatMap(chain));  // Optional.empty
+        System.out.println(chain.orElse(3L, 0.));  // 0.0
+
+        System.out.println("Account 4");  //Id associated to null in the map
+        System.out.println(accountId4.flatMap(chain));  // Optional.empty
+        System.out.println(chain.orElse(4L, 0.));  // 0.0
 
-        public Currency getCurrency() {
-            return currency;
-        }
+        System.out.println("Account 5");  // Account's balance is null => toDollars doesn't run
+        System.out.println(accountId5.flatMap(chain));  // Optional.empty
+        System.out.println(chain.orElse(5L, 0.));  // 0.0
+        chain.ifPresent(5L, System.out::println);  // Nothing printed
     }
 
 }
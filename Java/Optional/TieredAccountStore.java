@@ -0,0 +1,365 @@
+package com.sitepoint.optional.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * An account store for banks that don't fit in the heap as `Account` objects: every account is kept off-heap, and
+ * only the most accessed ones also on-heap. Lookups keep the `findAccount` contract of the examples: `apply` returns
+ * `Optional.empty()` for an id that is not in the store or is associated to `null`.
+ *
+ * The cold tier is an open-addressing hash table in direct `ByteBuffer`s, outside the garbage-collected heap. Its
+ * records use the layout of `MappedLedger` (id, account id, amount in minor units, currency, flags), plus a byte
+ * telling whether the slot is used and a counter of the accesses to the record. It holds every account, and is
+ * always up to date. Direct buffers are limited by `-XX:MaxDirectMemorySize`.
+ *
+ * The hot tier is a `ConcurrentHashMap` of the accounts read at least `promotionThreshold` times from the cold
+ * tier since they were last demoted. Its capacity is derived from `maxHeapBytes`, at an estimated
+ * `ESTIMATED_HOT_ENTRY_BYTES` per account, so that the heap used by the store stays under that limit whatever the
+ * size of the bank. When it is full, promoting an account demotes another one, chosen with the CLOCK algorithm as
+ * in `CachingAccountFinder`: accounts accessed since the last scan get a second chance.
+ *
+ * Hot lookups never take a lock; cold lookups, promotions and updates synchronize on the store.
+ * Accounts are stored as values: an `Account` returned by the cold tier is a fresh copy, so updates must go through
+ * `put` rather than `Account.deposit` or `Account.withdraw`.
+ */
+final class TieredAccountStore implements Function<Long, Optional<Account>> {
+
+    /**
+     * Heap taken by an account in the hot tier: the `Account`, its `Long` id, `Balance` and `Double` amount, the
+     * `Long` key, the map node and table slot, and the CLOCK entry and ring slot.
+     */
+    static final int ESTIMATED_HOT_ENTRY_BYTES = 160;
+    static final int DEFAULT_PROMOTION_THRESHOLD = 2;
+
+    private static final int STATE_OFFSET = 26;
+    private static final int HITS_OFFSET = 28;
+    private static final byte USED = 1;
+
+    private static final int MAX_CHUNK_SHIFT = 25;  // 2^25 records of 32 bytes = 1GB per buffer
+    private static final int MIN_CAPACITY = 16;
+
+    private final int promotionThreshold;
+
+    // The cold tier, guarded by `this`.
+    private ByteBuffer[] chunks;
+    private int chunkShift;
+    private long capacity;
+    private long size;
+
+    // The hot tier: lookups read `hot` without locking, updates are guarded by `this`.
+    private final ConcurrentHashMap<Long, Entry> hot;
+    private final Entry[] ring;
+    private int hand;
+    private int hotSize;
+
+    private final LongAdder hotHits = new LongAdder();
+    private final LongAdder coldHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder promotions = new LongAdder();
+    private final LongAdder demotions = new LongAdder();
+
+    public TieredAccountStore(long maxHeapBytes) {
+        this(maxHeapBytes, MIN_CAPACITY, DEFAULT_PROMOTION_THRESHOLD);
+    }
+
+    /**
+     * @param maxHeapBytes       Heap the hot tier may use.
+     * @param expectedSize       Accounts the cold tier is sized for; it grows as needed.
+     * @param promotionThreshold Cold accesses after which an account is promoted to the hot tier.
+     */
+    public TieredAccountStore(long maxHeapBytes, long expectedSize, int promotionThreshold) {
+        long hotCapacity = maxHeapBytes / ESTIMATED_HOT_ENTRY_BYTES;
+        if (hotCapacity <= 0 || hotCapacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Heap limit out of range: " + maxHeapBytes);
+        }
+        if (promotionThreshold <= 0) {
+            throw new IllegalArgumentException("Promotion threshold must be positive: " + promotionThreshold);
+        }
+        this.promotionThreshold = promotionThreshold;
+        this.hot = new ConcurrentHashMap<>((int) hotCapacity);
+        this.ring = new Entry[(int) hotCapacity];
+        allocate(Math.max(MIN_CAPACITY, Long.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1));
+    }
+
+    public static TieredAccountStore of(LongAccountMap bank, long maxHeapBytes) {
+        TieredAccountStore store = new TieredAccountStore(maxHeapBytes, bank.size(), DEFAULT_PROMOTION_THRESHOLD);
+        bank.forEach(store::put);
+        return store;
+    }
+
+    @Override
+    public Optional<Account> apply(Long id) {
+        if (id == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        Entry entry = hot.get(id);
+        if (entry != null) {
+            hotHits.increment();
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            return Optional.ofNullable(entry.account);
+        }
+        return applyCold(id);
+    }
+
+    private synchronized Optional<Account> applyCold(Long id) {
+        Entry entry = hot.get(id);
+        if (entry != null) {
+            hotHits.increment();
+            return Optional.ofNullable(entry.account);
+        }
+        long slot = slotOf(id);
+        if (!isUsed(slot)) {
+            misses.increment();
+            return Optional.empty();
+        }
+        coldHits.increment();
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        Account account = MappedLedger.readRecord(chunk, offset);
+        int hits = chunk.getInt(offset + HITS_OFFSET) + 1;
+        if (hits >= promotionThreshold) {
+            chunk.putInt(offset + HITS_OFFSET, 0);
+            promote(id, account);
+        } else {
+            chunk.putInt(offset + HITS_OFFSET, hits);
+        }
+        return Optional.ofNullable(account);
+    }
+
+    public boolean containsKey(long id) {
+        return hot.containsKey(id) || containsCold(id);
+    }
+
+    private synchronized boolean containsCold(long id) {
+        return isUsed(slotOf(id));
+    }
+
+    /**
+     * Associates `account` to `id`, in the cold tier and, if `id` is hot, in the hot tier.
+     */
+    public synchronized void put(long id, Account account) {
+        long slot = slotOf(id);
+        int hits = 0;
+        if (isUsed(slot)) {
+            hits = chunk(slot).getInt(offset(slot) + HITS_OFFSET);
+        } else if (size + 1 > capacity >>> 1) {
+            allocate(capacity << 1);
+            slot = slotOf(id);
+        }
+        if (!isUsed(slot)) {
+            size++;
+        }
+        write(slot, id, account, hits);
+        Entry entry = hot.get(id);
+        if (entry != null) {
+            entry.account = account;
+        }
+    }
+
+    public synchronized boolean remove(long id) {
+        Entry entry = hot.remove(id);
+        if (entry != null) {
+            ring[entry.slot] = null;
+            hotSize--;
+        }
+        long slot = slotOf(id);
+        if (!isUsed(slot)) {
+            return false;
+        }
+        // Backward-shift deletion, as in `LongAccountMap`.
+        long mask = capacity - 1;
+        long free = slot;
+        long next = (free + 1) & mask;
+        while (isUsed(next)) {
+            long home = hash(keyAt(next)) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                copy(chunk(next), offset(next), chunk(free), offset(free));
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        chunk(free).put(offset(free) + STATE_OFFSET, (byte) 0);
+        size--;
+        return true;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int hotSize() {
+        return hotSize;
+    }
+
+    public int hotCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * @return The estimated heap used by the hot tier.
+     */
+    public long onHeapBytes() {
+        return (long) hotSize() * ESTIMATED_HOT_ENTRY_BYTES;
+    }
+
+    /**
+     * @return The direct memory allocated for the cold tier.
+     */
+    public synchronized long offHeapBytes() {
+        return capacity * MappedLedger.RECORD_SIZE;
+    }
+
+    public long hotHitCount() {
+        return hotHits.sum();
+    }
+
+    public long coldHitCount() {
+        return coldHits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long promotionCount() {
+        return promotions.sum();
+    }
+
+    public long demotionCount() {
+        return demotions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "TieredAccountStore[size=" + size() + ", hot=" + hotSize() + "/" + hotCapacity()
+                + ", onHeapBytes=" + onHeapBytes() + ", offHeapBytes=" + offHeapBytes()
+                + ", hotHits=" + hotHitCount() + ", coldHits=" + coldHitCount() + ", misses=" + missCount()
+                + ", promotions=" + promotionCount() + ", demotions=" + demotionCount() + "]";
+    }
+
+    private void promote(Long id, Account account) {
+        int slot;
+        if (hotSize < ring.length) {
+            while (ring[hand] != null) {
+                advanceHand();
+            }
+            slot = hand;
+        } else {
+            while (ring[hand].referenced) {
+                ring[hand].referenced = false;
+                advanceHand();
+            }
+            hot.remove(ring[hand].id);
+            hotSize--;
+            demotions.increment();
+            slot = hand;
+        }
+        advanceHand();
+        Entry entry = new Entry(id, account, slot);
+        ring[slot] = entry;
+        hotSize++;
+        hot.put(id, entry);
+        promotions.increment();
+    }
+
+    private void advanceHand() {
+        hand = hand + 1 == ring.length ? 0 : hand + 1;
+    }
+
+    /**
+     * Replaces the cold tier with an empty table of `newCapacity` slots, and moves the used records into it.
+     */
+    private void allocate(long newCapacity) {
+        ByteBuffer[] oldChunks = chunks;
+        int oldChunkShift = chunkShift;
+        long oldCapacity = capacity;
+
+        int capacityShift = Long.numberOfTrailingZeros(newCapacity);
+        chunkShift = Math.min(capacityShift, MAX_CHUNK_SHIFT);
+        long chunkCount = newCapacity >>> chunkShift;
+        if (chunkCount > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Store too large: " + newCapacity + " slots");
+        }
+        chunks = new ByteBuffer[(int) chunkCount];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(MappedLedger.RECORD_SIZE << chunkShift).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        capacity = newCapacity;
+
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            ByteBuffer chunk = oldChunks[(int) (slot >>> oldChunkShift)];
+            int offset = (int) ((slot & ((1L << oldChunkShift) - 1)) * MappedLedger.RECORD_SIZE);
+            if (chunk.get(offset + STATE_OFFSET) == USED) {
+                long newSlot = slotOf(chunk.getLong(offset + MappedLedger.KEY_OFFSET));
+                copy(chunk, offset, chunk(newSlot), offset(newSlot));
+            }
+        }
+    }
+
+    private long slotOf(long id) {
+        long mask = capacity - 1;
+        long slot = hash(id) & mask;
+        while (isUsed(slot) && keyAt(slot) != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private boolean isUsed(long slot) {
+        return chunk(slot).get(offset(slot) + STATE_OFFSET) == USED;
+    }
+
+    private long keyAt(long slot) {
+        return chunk(slot).getLong(offset(slot) + MappedLedger.KEY_OFFSET);
+    }
+
+    private void write(long slot, long id, Account account, int hits) {
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        ByteBuffer record = chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        record.position(offset);
+        MappedLedger.writeRecord(record, id, account);
+        chunk.put(offset + STATE_OFFSET, USED);
+        chunk.putInt(offset + HITS_OFFSET, hits);
+    }
+
+    private static void copy(ByteBuffer from, int fromOffset, ByteBuffer to, int toOffset) {
+        for (int i = 0; i < MappedLedger.RECORD_SIZE; i += Long.BYTES) {
+            to.putLong(toOffset + i, from.getLong(fromOffset + i));
+        }
+    }
+
+    private ByteBuffer chunk(long slot) {
+        return chunks[(int) (slot >>> chunkShift)];
+    }
+
+    private int offset(long slot) {
+        return (int) ((slot & ((1L << chunkShift) - 1)) * MappedLedger.RECORD_SIZE);
+    }
+
+    private static final class Entry {
+        final Long id;
+        final int slot;
+        volatile Account account;
+        volatile boolean referenced;
+
+        Entry(Long id, Account account, int slot) {
+            this.id = id;
+            this.account = account;
+            this.slot = slot;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.sitepoint.optional.example;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Stress test for `Account.deposit`/`withdraw` and `AccountTransfers.transfer`.
+ *
+ * Writer threads move money between random accounts, and deposit and then withdraw the same amount, while reader
+ * threads keep valuing random accounts through the `findAccount -> extractBalance -> toDollars` chain of
+ * `attemptedSolutionOptionalOutputOnly`. At the end the total amount in the bank must be unchanged, and readers must
+ * never have seen an account without a value.
+ *
+ * Run with `java com.sitepoint.optional.example.TransferStressDemo [threads] [operationsPerThread]`.
+ */
+public class TransferStressDemo {
+
+    private static final int ACCOUNTS = 1_000;
+    private static final long INITIAL_MINOR_UNITS = 100_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        LongAccountMap bank = new LongAccountMap(ACCOUNTS);
+        for (long id = 0; id < ACCOUNTS; id++) {
+            bank.put(id, new Account(id, new Balance(CompactBalance.toAmount(INITIAL_MINOR_UNITS), Currency.EURO)));
+        }
+        long expectedTotal = totalMinorUnits(bank);
+
+        Function<Long, Optional<Account>> findAccount = bank.finder();
+        Function<Account, Optional<Balance>> extractBalance = account -> Optional.ofNullable(account.getBalance());
+        Function<Balance, Optional<Double>> toDollars =
+                balance -> Optional.ofNullable(balance.getAmount() * ExchangeRates.dollarRates().rate(balance.getCurrency()));
+
+        AccountTransfers transfers = new AccountTransfers();
+        AtomicLong completedTransfers = new AtomicLong();
+        AtomicLong emptyReads = new AtomicLong();
+        CountDownLatch writersDone = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] workers = new Thread[threads * 2];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                awaitQuietly(start);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < operations; i++) {
+                    Account from = bank.get(random.nextInt(ACCOUNTS));
+                    Account to = bank.get(random.nextInt(ACCOUNTS));
+                    double amount = CompactBalance.toAmount(random.nextInt(1, 5_000));
+                    if (from == to) {
+                        from.deposit(amount);
+                        while (!from.withdraw(amount)) {
+                            Thread.yield();
+                        }
+                    } else if (transfers.transfer(from, to, amount)) {
+                        completedTransfers.incrementAndGet();
+                    }
+                }
+                writersDone.countDown();
+            });
+            workers[threads + t] = new Thread(() -> {
+                awaitQuietly(start);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (writersDone.getCount() > 0) {
+                    Optional<Double> dollars = findAccount.apply((long) random.nextInt(ACCOUNTS))
+                            .flatMap(extractBalance)
+                            .flatMap(toDollars);
+                    if (!dollars.isPresent()) {
+                        emptyReads.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        long actualTotal = totalMinorUnits(bank);
+        System.out.println("Writer threads: " + threads + ", operations per thread: " + operations
+                + ", elapsed: " + elapsedMillis + " ms");
+        System.out.println("Completed transfers: " + completedTransfers.get());
+        System.out.println("Total before: " + expectedTotal + ", after: " + actualTotal);
+        System.out.println("Total conserved: " + (expectedTotal == actualTotal));  // true
+        System.out.println("Empty reads: " + emptyReads.get());  // 0
+        if (expectedTotal != actualTotal || emptyReads.get() != 0) {
+            System.exit(1);
+        }
+    }
+
+    private static long totalMinorUnits(LongAccountMap bank) {
+        long[] total = {0};
+        bank.forEach((id, account) -> total[0] += CompactBalance.toMinorUnits(account.getBalance().getAmount()));
+        return total[0];
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
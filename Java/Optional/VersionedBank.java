@@ -0,0 +1,118 @@
+package com.sitepoint.optional.example;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bank whose every update publishes a new version of a `PersistentAccountMap`, so that long-running readers
+ * (e.g. a full valuation) can work on a consistent snapshot while writers go on.
+ *
+ * Writers swap the current version with compare-and-set, retrying on conflicts, so they never block readers nor
+ * each other; `snapshot` just reads the current version, in O(1). A version stays alive as long as some reader
+ * references it, and the nodes it doesn't share with newer versions are then reclaimed by the garbage collector.
+ *
+ * A snapshot only isolates what the map holds: an `Account` mutated in place (e.g. by `deposit`) changes in every
+ * version that contains it. `setBalance` updates a balance by putting a new `Account` instead, which snapshots don't
+ * see.
+ */
+final class VersionedBank {
+
+    private final AtomicReference<PersistentAccountMap> current;
+
+    public VersionedBank() {
+        this(PersistentAccountMap.empty());
+    }
+
+    public VersionedBank(PersistentAccountMap initial) {
+        this.current = new AtomicReference<>(initial);
+    }
+
+    public static VersionedBank of(LongAccountMap bank) {
+        PersistentAccountMap[] map = {PersistentAccountMap.empty()};
+        bank.forEach((id, account) -> map[0] = map[0].put(id, account));
+        return new VersionedBank(map[0]);
+    }
+
+    /**
+     * @return The current version of the bank, which is never modified.
+     */
+    public PersistentAccountMap snapshot() {
+        return current.get();
+    }
+
+    public Account get(long id) {
+        return current.get().get(id);
+    }
+
+    public boolean containsKey(long id) {
+        return current.get().containsKey(id);
+    }
+
+    public int size() {
+        return current.get().size();
+    }
+
+    /**
+     * @return The version created by this update.
+     */
+    public PersistentAccountMap put(long id, Account account) {
+        return update(map -> map.put(id, account));
+    }
+
+    /**
+     * @return The version created by this update.
+     */
+    public PersistentAccountMap remove(long id) {
+        return update(map -> map.remove(id));
+    }
+
+    /**
+     * Replaces the account associated to `id` with a new `Account` holding `balance`.
+     *
+     * @return The version created by this update.
+     * @throws IllegalStateException If `id` is not associated to an account.
+     */
+    public PersistentAccountMap setBalance(long id, Balance balance) {
+        return update(map -> {
+            Account account = map.get(id);
+            if (account == null) {
+                throw new IllegalStateException("No account for id " + id);
+            }
+            return map.put(id, new Account(account.getId(), balance));
+        });
+    }
+
+    /**
+     * Atomically replaces the current version with `function` applied to it; `function` may be called more than
+     * once, if other writers update the bank concurrently, so it must have no side effects.
+     *
+     * @return The version created by this update.
+     */
+    public PersistentAccountMap update(UnaryOperator<PersistentAccountMap> function) {
+        PersistentAccountMap expected;
+        PersistentAccountMap updated;
+        do {
+            expected = current.get();
+            updated = function.apply(expected);
+        } while (!current.compareAndSet(expected, updated));
+        return updated;
+    }
+
+    /**
+     * Equivalent of the `findAccount` function in the examples, always reading the current version.
+     */
+    public Function<Long, Optional<Account>> finder() {
+        return id -> id == null ? Optional.empty() : Optional.ofNullable(get(id));
+    }
+
+    /**
+     * Values a snapshot of the bank; writers are not held up, and don't affect the result.
+     */
+    public CurrencyTotals valuation() {
+        CurrencyTotals totals = new CurrencyTotals();
+        snapshot().forEach((id, account) -> totals.add(account));
+        return totals;
+    }
+}
@@ -0,0 +1,33 @@
+#!/bin/sh
+# Builds the examples into a jar, dumps a class-data-sharing archive of the classes loaded by a bootstrap run of
+# StartupBenchmark, and then compares the time to the first valuation with and without the archive.
+#
+# Needs JDK 13+ (-XX:ArchiveClassesAtExit); class-data sharing only works with classes loaded from jars.
+# Usage: ./cds.sh [runs]
+set -e
+
+cd "$(dirname "$0")"
+RUNS=${1:-5}
+BUILD=build
+JAR=$BUILD/optional.jar
+ARCHIVE=$BUILD/optional.jsa
+MAIN=com.sitepoint.optional.example.StartupBenchmark
+
+rm -rf "$BUILD"
+mkdir -p "$BUILD/classes"
+javac -d "$BUILD/classes" *.java
+jar cf "$JAR" -C "$BUILD/classes" .
+
+# Training run: the archive holds every class loaded until the JVM exits
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$JAR" "$MAIN" bootstrap > /dev/null
+
+for mode in inline bootstrap; do
+    echo "== $mode, no archive"
+    for i in $(seq "$RUNS"); do
+        java -Xshare:auto -cp "$JAR" "$MAIN" "$mode"
+    done
+    echo "== $mode, with $ARCHIVE"
+    for i in $(seq "$RUNS"); do
+        java -XX:SharedArchiveFile="$ARCHIVE" -cp "$JAR" "$MAIN" "$mode"
+    done
+done